@@ -0,0 +1,475 @@
+package ICL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * In-JVM landmark (peak pair) audio fingerprinting engine, replaces the dejavu python scripts used by audio ICL.
+ * Same idea as dejavu: spectrogram -> local peak picking -> hash each peak with its next few peaks (fan out) as
+ * (freq1, freq2, time delta) -> match by aligning the time offset of hashes shared between the pattern and the indexed audio.
+ * The index is kept in memory and is reset on every fingerprint() call, equivalent to the dejavu 'reset database' flag,
+ * so pattern will never be recognized against previous time segments.
+ * For sliding window use, append() fingerprints only the newly arrived samples and evictBefore() drops the expired head,
+ * instead of re-fingerprinting the whole window every frame.
+ * NOTE: Not thread safe, each audio ICL worker should own its instance, they are meant to be reused across frames.
+ * Input are mono 16bit PCM decoded into double of range -1 to 1, see Util.audioByteArrayToDoubleArray.
+ */
+public class AudioFingerprint {
+	//Spectrogram setting, window must be power of 2 for the FFT. 1024 sample at 44100hz is ~23ms, hop half of it.
+	private static final int DEFAULT_WINDOW_SIZE = 1024;
+	private static final int DEFAULT_HOP_SIZE = DEFAULT_WINDOW_SIZE / 2;
+
+	//Peak picking, a peak must be the maximum within this neighborhood (in bins and frames) and louder than the minimum amplitude (dB).
+	private static final int PEAK_NEIGHBORHOOD_FREQ = 10;
+	private static final int PEAK_NEIGHBORHOOD_TIME = 3;
+	private static final double PEAK_MIN_AMPLITUDE = -60d;
+
+	//Fan out, how many following peaks each peak are paired with, and the maximum frame distance for them to be paired.
+	private static final int FAN_VALUE = 10;
+	private static final int MAX_HASH_TIME_DELTA = 200;
+
+	//Minimum number of hashes agreeing on the same offset to be treated as a match, lower than this is coincidence.
+	private static final int MIN_MATCH_CONFIDENCE = 3;
+
+	//Hash packing: freq1 10bit | freq2 10bit | timeDelta 12bit.
+	private static final int FREQ_BITS = 10;
+	private static final int DELTA_BITS = 12;
+	private static final int FREQ_MASK = (1 << FREQ_BITS) - 1;
+	private static final int DELTA_MASK = (1 << DELTA_BITS) - 1;
+
+	private final int sampleRate;
+	private final int windowSize;
+	private final int hopSize;
+	private final int binCount;
+
+	//Precomputed FFT and window tables, and reusable working buffers.
+	private final double[] hannWindow;
+	private final double[] cosTable;
+	private final double[] sinTable;
+	private final int[] bitReverse;
+	private final double[] fftRe;
+	private final double[] fftIm;
+
+	//Hash -> frame index list of where it occurs within the fingerprinted audio.
+	private final HashMap<Integer, FrameList> index = new HashMap<Integer, FrameList>();
+	private int indexedHashCount = 0;
+	private int lastMatchConfidence = 0;
+
+	/*
+	 * Streaming state, used by append() only. Frame index are absolute since the last reset, int is good for ~290 days of audio at 44100hz.
+	 * pendingSample holds the tail that is not enough to form a full window yet. The latest (2 * PEAK_NEIGHBORHOOD_TIME + 1) spectrogram
+	 * rows are kept in a ring as a frame can only be peak picked after its following neighborhood arrives. The last FAN_VALUE peaks
+	 * are kept to pair them with the incoming peaks.
+	 */
+	private final double[] pendingSample;
+	private int pendingSampleCount = 0;
+	private final double[][] recentRow;
+	private final double[] timeMaxRow;
+	private int streamFrameCount = 0;
+	private final int[] recentPeakFrame = new int[FAN_VALUE];
+	private final int[] recentPeakBin = new int[FAN_VALUE];
+	private int recentPeakHead = 0;
+	private int recentPeakSize = 0;
+	private final ArrayList<int[]> rowPeak = new ArrayList<int[]>();
+	//Oldest sample still within the window, frame anchored before it are ignored and pruned lazily.
+	private long streamStartSample = 0;
+	private int streamStartFrame = 0;
+	private int prunedUpToFrame = 0;
+
+	/**
+	 * Growable primitive int list, avoid boxing every frame index stored in the index.
+	 */
+	private static class FrameList {
+		int[] frames = new int[2];
+		int size = 0;
+		void add(int frame) {
+			if (size == frames.length)
+				frames = Arrays.copyOf(frames, size * 2);
+			frames[size++] = frame;
+		}
+	}
+
+	public AudioFingerprint(int sampleRate) {
+		this(sampleRate, DEFAULT_WINDOW_SIZE, DEFAULT_HOP_SIZE);
+	}
+
+	/**
+	 * @param sampleRate Sample per second of the audio given, eg 44100.
+	 * @param windowSize FFT window size, must be power of 2.
+	 * @param hopSize Sample distance between consecutive window.
+	 */
+	public AudioFingerprint(int sampleRate, int windowSize, int hopSize) {
+		if (Integer.bitCount(windowSize) != 1)
+			throw new IllegalArgumentException("Window size must be power of 2 but get: " + windowSize);
+		if (hopSize <= 0 || hopSize > windowSize)
+			throw new IllegalArgumentException("Invalid hop size: " + hopSize + " for window size: " + windowSize);
+		this.sampleRate = sampleRate;
+		this.windowSize = windowSize;
+		this.hopSize = hopSize;
+		//Only half of the spectrum is unique for real input. Capped to fit in the hash frequency bits.
+		this.binCount = Math.min(windowSize / 2, FREQ_MASK + 1);
+
+		hannWindow = new double[windowSize];
+		for (int i=0; i<windowSize; i++)
+			hannWindow[i] = 0.5d - 0.5d * Math.cos(2d * Math.PI * i / (windowSize - 1));
+
+		cosTable = new double[windowSize / 2];
+		sinTable = new double[windowSize / 2];
+		for (int i=0; i<windowSize / 2; i++) {
+			cosTable[i] = Math.cos(-2d * Math.PI * i / windowSize);
+			sinTable[i] = Math.sin(-2d * Math.PI * i / windowSize);
+		}
+
+		int bits = Integer.numberOfTrailingZeros(windowSize);
+		bitReverse = new int[windowSize];
+		for (int i=0; i<windowSize; i++)
+			bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+
+		fftRe = new double[windowSize];
+		fftIm = new double[windowSize];
+
+		pendingSample = new double[windowSize];
+		recentRow = new double[PEAK_NEIGHBORHOOD_TIME * 2 + 1][binCount];
+		timeMaxRow = new double[binCount];
+	}
+
+	/**
+	 * Discard all the fingerprint in the index.
+	 */
+	public void reset() {
+		index.clear();
+		indexedHashCount = 0;
+		pendingSampleCount = 0;
+		streamFrameCount = 0;
+		recentPeakHead = 0;
+		recentPeakSize = 0;
+		streamStartSample = 0;
+		streamStartFrame = 0;
+		prunedUpToFrame = 0;
+	}
+
+	/**
+	 * Reset the index and fingerprint the given audio so patterns can be recognized against it.
+	 * @param samples Decoded mono audio data of range -1 to 1.
+	 * @return Number of hashes indexed.
+	 */
+	public int fingerprint(double[] samples) {
+		reset();
+		int[] hashes = hash(samples);
+		//hashes are stored in pair of (hash, anchor frame).
+		for (int i=0; i<hashes.length; i+=2) {
+			FrameList frames = index.get(hashes[i]);
+			if (frames == null) {
+				frames = new FrameList();
+				index.put(hashes[i], frames);
+			}
+			frames.add(hashes[i + 1]);
+		}
+		indexedHashCount = hashes.length / 2;
+		return indexedHashCount;
+	}
+
+	/**
+	 * Fingerprint the newly arrived samples, continuing from whatever had been appended since the last reset.
+	 * Only the new spectrogram frames are computed. The last few frames and their pairs are only indexed after their following
+	 * neighborhood arrives, thus the latest ~(PEAK_NEIGHBORHOOD_TIME + 1) frames are not recognizable yet.
+	 * @param samples Decoded mono audio data of range -1 to 1, continuation of the previous append.
+	 * @return Number of hashes added.
+	 */
+	public int append(double[] samples) {
+		int before = indexedHashCount;
+		int overlap = windowSize - hopSize;
+		for (int i=0; i<samples.length; i++) {
+			pendingSample[pendingSampleCount++] = samples[i];
+			if (pendingSampleCount == windowSize) {
+				spectrogramRow(pendingSample, 0, recentRow[streamFrameCount % recentRow.length]);
+				streamFrameCount++;
+				//Keep the overlapping part for the next window.
+				System.arraycopy(pendingSample, hopSize, pendingSample, 0, overlap);
+				pendingSampleCount = overlap;
+
+				//The frame that now has its full following neighborhood can be peak picked.
+				int readyFrame = streamFrameCount - 1 - PEAK_NEIGHBORHOOD_TIME;
+				if (readyFrame >= 0)
+					streamPeakFrame(readyFrame);
+			}
+		}
+		return indexedHashCount - before;
+	}
+
+	/**
+	 * Expire everything before the given sample index (counted from the first appended sample since the last reset), recognition
+	 * offsets returned afterward are relative to this sample.
+	 * @param sampleIndex The oldest sample still within the window.
+	 */
+	public void evictBefore(long sampleIndex) {
+		if (sampleIndex <= streamStartSample)
+			return;
+		streamStartSample = sampleIndex;
+		//A frame is only kept if it starts within the window.
+		streamStartFrame = (int) ((sampleIndex + hopSize - 1) / hopSize);
+
+		//Prune lazily, only sweep the index after a window worth of frames had expired so it stays amortized O(1) per frame.
+		if (streamStartFrame - prunedUpToFrame >= Math.max(1, streamFrameCount - streamStartFrame)) {
+			Iterator<Map.Entry<Integer, FrameList>> itr = index.entrySet().iterator();
+			while (itr.hasNext()) {
+				FrameList frames = itr.next().getValue();
+				int kept = 0;
+				for (int f=0; f<frames.size; f++) {
+					if (frames.frames[f] >= streamStartFrame)
+						frames.frames[kept++] = frames.frames[f];
+				}
+				indexedHashCount -= frames.size - kept;
+				frames.size = kept;
+				if (kept == 0)
+					itr.remove();
+			}
+			prunedUpToFrame = streamStartFrame;
+		}
+	}
+
+	/**
+	 * Recognize the pattern within the last fingerprinted audio.
+	 * @param pattern Decoded mono audio data of range -1 to 1.
+	 * @return Offset in millisecond of where the pattern starts within the fingerprinted audio (or from the oldest sample still within
+	 * the window if it is appended), -1 if not matched.
+	 */
+	public long recognizeOffsetMilli(double[] pattern) {
+		lastMatchConfidence = 0;
+		if (indexedHashCount == 0)
+			return -1l;
+
+		int[] hashes = hash(pattern);
+		//Histogram of frame offset differences, the offset most hashes agree with is where the pattern aligns.
+		HashMap<Integer, int[]> offsetVote = new HashMap<Integer, int[]>();
+		int bestOffset = 0;
+		int bestCount = 0;
+		for (int i=0; i<hashes.length; i+=2) {
+			FrameList frames = index.get(hashes[i]);
+			if (frames == null)
+				continue;
+			for (int f=0; f<frames.size; f++) {
+				//Expired but not pruned yet.
+				if (frames.frames[f] < streamStartFrame)
+					continue;
+				int offset = frames.frames[f] - hashes[i + 1];
+				int[] count = offsetVote.get(offset);
+				if (count == null) {
+					count = new int[1];
+					offsetVote.put(offset, count);
+				}
+				count[0]++;
+				//Tie resolve to the earliest offset to be deterministic.
+				if (count[0] > bestCount || (count[0] == bestCount && offset < bestOffset)) {
+					bestCount = count[0];
+					bestOffset = offset;
+				}
+			}
+		}
+
+		//The pattern may be misaligned with the window start by less than a hop, still accept it.
+		if (bestCount < MIN_MATCH_CONFIDENCE || bestOffset < 0 || (long) bestOffset * hopSize + hopSize <= streamStartSample)
+			return -1l;
+		lastMatchConfidence = bestCount;
+		//Relative to the window start, which is 0 unless it is streamed and evicted.
+		long offsetMilli = Math.round(((double) bestOffset * hopSize - streamStartSample) * 1000d / sampleRate);
+		return offsetMilli < 0 ? 0 : offsetMilli;
+	}
+
+	/**
+	 * Number of aligned hashes that supported the last successful recognition, 0 if it was not matched.
+	 */
+	public int getLastMatchConfidence() {
+		return lastMatchConfidence;
+	}
+
+	public int getIndexedHashCount() {
+		return indexedHashCount;
+	}
+
+	/**
+	 * Convert spectrogram frame index into millisecond.
+	 */
+	public long frameToMilli(int frame) {
+		return Math.round((double) frame * hopSize * 1000d / sampleRate);
+	}
+
+	/**
+	 * Generate landmark hashes of the given audio.
+	 * @return Flattened pair of (hash, anchor frame index).
+	 */
+	private int[] hash(double[] samples) {
+		if (samples.length < windowSize)
+			return new int[0];
+
+		double[][] spectrogram = spectrogram(samples);
+		ArrayList<int[]> peaks = findPeaks(spectrogram);
+
+		//Peaks are already ordered by frame then by bin as we scan it in that order.
+		int[] result = new int[peaks.size() * FAN_VALUE * 2];
+		int count = 0;
+		for (int i=0; i<peaks.size(); i++) {
+			int[] anchor = peaks.get(i);
+			for (int j=1; j<=FAN_VALUE && i + j < peaks.size(); j++) {
+				int[] target = peaks.get(i + j);
+				int delta = target[0] - anchor[0];
+				if (delta > MAX_HASH_TIME_DELTA)
+					break;
+				//Same frame pair has no timing information, skip it.
+				if (delta <= 0)
+					continue;
+				result[count++] = (anchor[1] << (FREQ_BITS + DELTA_BITS)) | (target[1] << DELTA_BITS) | (delta & DELTA_MASK);
+				result[count++] = anchor[0];
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Short time fourier transform with hann window, output in dB.
+	 * @return [frame][bin] log magnitude.
+	 */
+	private double[][] spectrogram(double[] samples) {
+		int frameCount = (samples.length - windowSize) / hopSize + 1;
+		double[][] result = new double[frameCount][binCount];
+		for (int frame=0; frame<frameCount; frame++)
+			spectrogramRow(samples, frame * hopSize, result[frame]);
+		return result;
+	}
+
+	/**
+	 * Compute a single spectrogram frame starting at the given sample into the given row.
+	 */
+	private void spectrogramRow(double[] samples, int start, double[] row) {
+		for (int i=0; i<windowSize; i++) {
+			int r = bitReverse[i];
+			fftRe[r] = samples[start + i] * hannWindow[i];
+			fftIm[r] = 0d;
+		}
+		fft();
+		for (int bin=0; bin<binCount; bin++) {
+			double power = fftRe[bin] * fftRe[bin] + fftIm[bin] * fftIm[bin];
+			//Floor it to avoid log of 0.
+			row[bin] = 10d * Math.log10(power < 1e-12 ? 1e-12 : power);
+		}
+	}
+
+	/**
+	 * In place iterative radix 2 FFT on the working buffer, input must already be bit reverse ordered.
+	 */
+	private void fft() {
+		for (int size=2; size<=windowSize; size<<=1) {
+			int half = size >> 1;
+			int tableStep = windowSize / size;
+			for (int start=0; start<windowSize; start+=size) {
+				for (int k=0; k<half; k++) {
+					double wr = cosTable[k * tableStep];
+					double wi = sinTable[k * tableStep];
+					int even = start + k;
+					int odd = even + half;
+					double tr = fftRe[odd] * wr - fftIm[odd] * wi;
+					double ti = fftRe[odd] * wi + fftIm[odd] * wr;
+					fftRe[odd] = fftRe[even] - tr;
+					fftIm[odd] = fftIm[even] - ti;
+					fftRe[even] += tr;
+					fftIm[even] += ti;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pick local maxima of the spectrogram within the peak neighborhood.
+	 * Separable max filter, first along time then along frequency, so it costs O(neighborhood) per cell instead of its area.
+	 * @return List of {frame, bin}, ordered by frame then bin.
+	 */
+	private ArrayList<int[]> findPeaks(double[][] spectrogram) {
+		int frameCount = spectrogram.length;
+		double[][] timeMax = new double[frameCount][binCount];
+		for (int frame=0; frame<frameCount; frame++) {
+			int from = Math.max(0, frame - PEAK_NEIGHBORHOOD_TIME);
+			int to = Math.min(frameCount - 1, frame + PEAK_NEIGHBORHOOD_TIME);
+			for (int bin=0; bin<binCount; bin++) {
+				double max = spectrogram[from][bin];
+				for (int t=from+1; t<=to; t++) {
+					if (spectrogram[t][bin] > max)
+						max = spectrogram[t][bin];
+				}
+				timeMax[frame][bin] = max;
+			}
+		}
+
+		ArrayList<int[]> peaks = new ArrayList<int[]>();
+		for (int frame=0; frame<frameCount; frame++)
+			findRowPeaks(frame, spectrogram[frame], timeMax[frame], peaks);
+		return peaks;
+	}
+
+	/**
+	 * Pick peaks of a single frame given its time neighborhood maximum, append them as {frame, bin} in bin order.
+	 */
+	private void findRowPeaks(int frame, double[] row, double[] maxRow, ArrayList<int[]> peaks) {
+		for (int bin=0; bin<binCount; bin++) {
+			double value = row[bin];
+			if (value < PEAK_MIN_AMPLITUDE)
+				continue;
+			int from = Math.max(0, bin - PEAK_NEIGHBORHOOD_FREQ);
+			int to = Math.min(binCount - 1, bin + PEAK_NEIGHBORHOOD_FREQ);
+			boolean isPeak = true;
+			for (int b=from; b<=to; b++) {
+				if (maxRow[b] > value) {
+					isPeak = false;
+					break;
+				}
+			}
+			if (isPeak)
+				peaks.add(new int[] {frame, bin});
+		}
+	}
+
+	/**
+	 * Streaming counterpart of findPeaks and hash, peak pick the given frame using the recent rows ring and pair every new peak
+	 * with the last FAN_VALUE peaks, which is the same pairing as hash() does from the anchor side.
+	 */
+	private void streamPeakFrame(int frame) {
+		int from = Math.max(0, frame - PEAK_NEIGHBORHOOD_TIME);
+		int to = frame + PEAK_NEIGHBORHOOD_TIME;
+		System.arraycopy(recentRow[from % recentRow.length], 0, timeMaxRow, 0, binCount);
+		for (int t=from+1; t<=to; t++) {
+			double[] row = recentRow[t % recentRow.length];
+			for (int bin=0; bin<binCount; bin++) {
+				if (row[bin] > timeMaxRow[bin])
+					timeMaxRow[bin] = row[bin];
+			}
+		}
+
+		rowPeak.clear();
+		findRowPeaks(frame, recentRow[frame % recentRow.length], timeMaxRow, rowPeak);
+		for (int[] peak : rowPeak) {
+			//Oldest to newest anchor, recentPeak is a ring of the last FAN_VALUE peaks.
+			for (int k=0; k<recentPeakSize; k++) {
+				int a = (recentPeakHead - recentPeakSize + k + FAN_VALUE) % FAN_VALUE;
+				int anchorFrame = recentPeakFrame[a];
+				int delta = peak[0] - anchorFrame;
+				if (delta <= 0 || delta > MAX_HASH_TIME_DELTA)
+					continue;
+				int hash = (recentPeakBin[a] << (FREQ_BITS + DELTA_BITS)) | (peak[1] << DELTA_BITS) | (delta & DELTA_MASK);
+				FrameList frames = index.get(hash);
+				if (frames == null) {
+					frames = new FrameList();
+					index.put(hash, frames);
+				}
+				frames.add(anchorFrame);
+				indexedHashCount++;
+			}
+			recentPeakFrame[recentPeakHead] = peak[0];
+			recentPeakBin[recentPeakHead] = peak[1];
+			recentPeakHead = (recentPeakHead + 1) % FAN_VALUE;
+			if (recentPeakSize < FAN_VALUE)
+				recentPeakSize++;
+		}
+	}
+}
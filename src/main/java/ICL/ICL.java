@@ -1,28 +1,24 @@
 package ICL;
 
 import java.awt.Point;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Queue;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.io.FileUtils;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
 import org.opencv.core.Scalar;
 import org.opencv.imgcodecs.Imgcodecs;
 
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
 import isradatabase.Direction;
-import isradatabase.Graph;
 import isradatabase.Vertex;
 import linkProperty.LinkProperty.LP;
 import stm.DBCN;
@@ -59,15 +55,14 @@ public abstract class ICL {
 		 * original data form.
 		 * NOTE: DeducedType, deduceHybridType, DeducedTypeRid, getOccurrenceOfDeducedTypeInFormOfRid, deducedTypeToRid and
 		 * deducedTypeRelevancyCalculationByExistence (6 of them) must change together if any one of them changes as they all uses the same class and idea.
-		 * TODO: change arraylist to tree for faster comparison. no implemented now because of comparator.
 		 */
 		private static class DeducedType {
-			ArrayList<Vertex> visual;
-			ArrayList<Vertex> audio;
-			ArrayList<Vertex> movement;
-			ArrayList<Vertex> polyVal;
-			ArrayList<Vertex> convergence;
-			ArrayList<Vertex> exp;
+			ArrayList<Vertex> visual = new ArrayList<Vertex>();
+			ArrayList<Vertex> audio = new ArrayList<Vertex>();
+			ArrayList<Vertex> movement = new ArrayList<Vertex>();
+			ArrayList<Vertex> polyVal = new ArrayList<Vertex>();
+			ArrayList<Vertex> convergence = new ArrayList<Vertex>();
+			ArrayList<Vertex> exp = new ArrayList<Vertex>();
 		}
 
 		/**
@@ -119,15 +114,37 @@ public abstract class ICL {
 		 * whom we get those rids from, just care about categorizing their types).
 		 * NOTE: DeducedType, deduceHybridType, DeducedTypeRid, expandDeducedTypeToOccurrenceScaleThenConvertToRidForm, deducedTypeToRid and
 		 * deducedTypeRelevancyCalculationByExistence (6 of them) must change together if any one of them changes as they all uses the same class and idea.
-		 * TODO: change arraylist to tree for faster comparison. no implemented now because of comparator.
+		 * RIDs are packed into long (Rid.toLong) and sorted ascending, so existence check is a single linear merge walk over both side (countExisting) instead of string scan.
 		 */
 		private static class DeducedTypeRid {
-			ArrayList<String> visual;
-			ArrayList<String> audio;
-			ArrayList<String> movement;
-			ArrayList<String> polyVal;
-			ArrayList<String> convergence;
-			ArrayList<String> exp;
+			long[] visual;
+			long[] audio;
+			long[] movement;
+			long[] polyVal;
+			long[] convergence;
+			long[] exp;
+		}
+
+		/**
+		 * Packed and sorted RIDs of the given vertexes, duplicates are kept.
+		 */
+		private static long[] toSortedRid(ArrayList<Vertex> vertexes) {
+			long[] result = new long[vertexes.size()];
+			for (int i=0; i<result.length; i++)
+				result[i] = vertexes.get(i).getRidValue().toLong();
+			Arrays.sort(result);
+			return result;
+		}
+
+		/**
+		 * Packed and sorted RIDs of every occurrence of the given vertexes.
+		 */
+		private static long[] toSortedOccurrenceRid(ArrayList<Vertex> vertexes) {
+			//To get occurrence, we need to traverse to their parent, then get all related siblings.
+			ArrayList<Vertex> occurrences = new ArrayList<Vertex>();
+			for (Vertex data : vertexes)
+				occurrences.addAll(Util.traverseGetOccurrence(data));
+			return toSortedRid(occurrences);
 		}
 
 		/**
@@ -140,38 +157,13 @@ public abstract class ICL {
 		 */
 		private static DeducedTypeRid expandDeducedTypeToOccurrenceScaleThenConvertToRidForm (DeducedType dataArray) {
 			//TODO: optimize it by fetching only the rids, without all the data, we don't need those data.
-			//To get occurrence, we need to traverse to their parent, then get all related siblings.
 			DeducedTypeRid result = new DeducedTypeRid();
-			for (Vertex data : dataArray.visual) {
-				ArrayList<Vertex> occurrenceList = Util.traverseGetOccurrence(data);
-				for (Vertex occurrence : occurrenceList)
-					result.visual.add(occurrence.getRid());
-			}
-			for (Vertex data : dataArray.audio) {
-				ArrayList<Vertex> occurrenceList = Util.traverseGetOccurrence(data);
-				for (Vertex occurrence : occurrenceList)
-					result.audio.add(occurrence.getRid());
-			}
-			for (Vertex data : dataArray.movement) {
-				ArrayList<Vertex> occurrenceList = Util.traverseGetOccurrence(data);
-				for (Vertex occurrence : occurrenceList)
-					result.movement.add(occurrence.getRid());
-			}
-			for (Vertex data : dataArray.polyVal) {
-				ArrayList<Vertex> occurrenceList = Util.traverseGetOccurrence(data);
-				for (Vertex occurrence : occurrenceList)
-					result.polyVal.add(occurrence.getRid());
-			}
-			for (Vertex data : dataArray.convergence) {
-				ArrayList<Vertex> occurrenceList = Util.traverseGetOccurrence(data);
-				for (Vertex occurrence : occurrenceList)
-					result.convergence.add(occurrence.getRid());
-			}
-			for (Vertex data : dataArray.exp) {
-				ArrayList<Vertex> occurrenceList = Util.traverseGetOccurrence(data);
-				for (Vertex occurrence : occurrenceList)
-					result.exp.add(occurrence.getRid());
-			}
+			result.visual = toSortedOccurrenceRid(dataArray.visual);
+			result.audio = toSortedOccurrenceRid(dataArray.audio);
+			result.movement = toSortedOccurrenceRid(dataArray.movement);
+			result.polyVal = toSortedOccurrenceRid(dataArray.polyVal);
+			result.convergence = toSortedOccurrenceRid(dataArray.convergence);
+			result.exp = toSortedOccurrenceRid(dataArray.exp);
 			return result;
 		}
 
@@ -185,21 +177,32 @@ public abstract class ICL {
 		private static DeducedTypeRid deducedTypeToRid (DeducedType dataArray) {
 			//TODO: optimize it by fetching only the rids, without all the data, we don't need those data.
 			DeducedTypeRid result = new DeducedTypeRid();
-			for (int i=0; i<dataArray.visual.size(); i++)
-				result.visual.add( dataArray.visual.get(i).getRid() );
-			for (int i=0; i<dataArray.audio.size(); i++)
-				result.audio.add( dataArray.audio.get(i).getRid() );
-			for (int i=0; i<dataArray.movement.size(); i++)
-				result.movement.add( dataArray.movement.get(i).getRid() );
-			for (int i=0; i<dataArray.polyVal.size(); i++)
-				result.polyVal.add( dataArray.polyVal.get(i).getRid() );
-			for (int i=0; i<dataArray.convergence.size(); i++)
-				result.convergence.add( dataArray.convergence.get(i).getRid() );
-			for (int i=0; i<dataArray.exp.size(); i++)
-				result.exp.add( dataArray.exp.get(i).getRid() );
+			result.visual = toSortedRid(dataArray.visual);
+			result.audio = toSortedRid(dataArray.audio);
+			result.movement = toSortedRid(dataArray.movement);
+			result.polyVal = toSortedRid(dataArray.polyVal);
+			result.convergence = toSortedRid(dataArray.convergence);
+			result.exp = toSortedRid(dataArray.exp);
 			return result;
 		}
 
+		/**
+		 * Count the targets (duplicates included) that exist in data. Both side are sorted, thus walk them together once, O(n + m).
+		 */
+		private static int countExisting(long[] targets, long[] data) {
+			int count = 0;
+			int dataIndex = 0;
+			for (long target : targets) {
+				while (dataIndex < data.length && data[dataIndex] < target)
+					dataIndex++;
+				if (dataIndex == data.length)
+					break;
+				if (data[dataIndex] == target)
+					count++;
+			}
+			return count;
+		}
+
 		/**
 		 * Calculate relevancy between 2 trees of RIDs by their existence(relativity). If occurrence RIDs is available in demand's siblings (occurrences)
 		 * RIDs, means they share the same siblings, thus it will be counted as match.
@@ -212,57 +215,14 @@ public abstract class ICL {
 		private static double deducedTypeRelevancyCalculationByExistence (DeducedTypeRid demandTree, DeducedTypeRid occurrenceTree) {
 			//Calculate the total amount of RIDs available in occurrenceTree. We match against him, thus he will be the standard.
 			//demandTree cannot be the standard as he has already combined all of its occurrence within 1 range traversal, he will be the dataset.
-			int maxMatchCount = occurrenceTree.visual.size() + occurrenceTree.audio.size() + occurrenceTree.movement.size()
-								+ occurrenceTree.polyVal.size() + occurrenceTree.convergence.size() + occurrenceTree.exp.size();
-			int matchCount = 0;
-			for (String target : occurrenceTree.visual) {
-				for (String data : demandTree.visual) {
-					if (target.equals(data)) {
-						matchCount++;
-						break;
-					}
-				}
-			}
-			for (String target : occurrenceTree.audio) {
-				for (String data : demandTree.audio) {
-					if (target.equals(data)) {
-						matchCount++;
-						break;
-					}
-				}
-			}
-			for (String target : occurrenceTree.movement) {
-				for (String data : demandTree.movement) {
-					if (target.equals(data)) {
-						matchCount++;
-						break;
-					}
-				}
-			}
-			for (String target : occurrenceTree.polyVal) {
-				for (String data : demandTree.polyVal) {
-					if (target.equals(data)) {
-						matchCount++;
-						break;
-					}
-				}
-			}
-			for (String target : occurrenceTree.convergence) {
-				for (String data : demandTree.convergence) {
-					if (target.equals(data)) {
-						matchCount++;
-						break;
-					}
-				}
-			}
-			for (String target : occurrenceTree.exp) {
-				for (String data : demandTree.exp) {
-					if (target.equals(data)) {
-						matchCount++;
-						break;
-					}
-				}
-			}
+			int maxMatchCount = occurrenceTree.visual.length + occurrenceTree.audio.length + occurrenceTree.movement.length
+								+ occurrenceTree.polyVal.length + occurrenceTree.convergence.length + occurrenceTree.exp.length;
+			int matchCount = countExisting(occurrenceTree.visual, demandTree.visual)
+					+ countExisting(occurrenceTree.audio, demandTree.audio)
+					+ countExisting(occurrenceTree.movement, demandTree.movement)
+					+ countExisting(occurrenceTree.polyVal, demandTree.polyVal)
+					+ countExisting(occurrenceTree.convergence, demandTree.convergence)
+					+ countExisting(occurrenceTree.exp, demandTree.exp);
 			assert matchCount < maxMatchCount : "matchCount:" + matchCount + ", is larget than maxMatchCount:" + matchCount;
 			return (double)matchCount / (double)maxMatchCount * 100d;
 		}
@@ -396,25 +356,123 @@ public abstract class ICL {
 	 * ICL functions related to raw visual data only.
 	 */
 	public static class Visual {
+		/*
+		 * Decoded image cache shared by all visual ICL functions and the GUI, keyed by the vertex rid the image is fetched from.
+		 * The same frame are read by distribution calculation, ICL and GUI, decoding it once saves repeated imdecode.
+		 * Weighted by the decoded size in KB, the cache owns the native memory and release it explicitly on eviction, caller uses
+		 * acquireMat/releaseMat pair so an in use Mat will only be released after its last user is done.
+		 */
+		private static class CachedMat {
+			final Mat mat;
+			private int useCount = 0;
+			private boolean evicted = false;
+
+			CachedMat(Mat mat) {
+				this.mat = mat;
+			}
+
+			synchronized boolean acquire() {
+				if (evicted)
+					return false;
+				useCount++;
+				return true;
+			}
+
+			synchronized void release() {
+				useCount--;
+				if (evicted && useCount == 0)
+					mat.release();
+			}
+
+			synchronized void evict() {
+				evicted = true;
+				if (useCount == 0)
+					mat.release();
+			}
+		}
+		//128MB worth of decoded image.
+		private static final long decodedMatCacheCapacityKB = 128l * 1024l;
+		private static final ConcurrentLinkedHashMap<String, CachedMat> decodedMatCache =
+				new ConcurrentLinkedHashMap.Builder<String, CachedMat>()
+				.maximumWeightedCapacity(decodedMatCacheCapacityKB)
+				.weigher(new Weigher<CachedMat>() {
+					@Override
+					public int weightOf(CachedMat cachedMat) {
+						return (int) Math.max(1l, cachedMat.mat.total() * cachedMat.mat.elemSize() / 1024l);
+					}
+				})
+				.listener(new EvictionListener<String, CachedMat>() {
+					@Override
+					public void onEviction(String rid, CachedMat evicted) {
+						evicted.evict();
+					}
+				})
+				.build();
+
 		/**
-		 * Fetch binary image from specified vertex and convert it to openCV Mat format.
+		 * Get the decoded image of the given vertex from cache, decode and cache it if it is not cached yet.
+		 * Must be paired with releaseMat in finally block, the returned Mat is shared, never modify nor release it directly.
 		 * @param targetVertex General Visual Vertex, the vertex that contain an edge to external data vertex which contain binary image data.
-		 * @return openCV Mat.
 		 */
-		public static Mat visualVertexToMat (Vertex targetVertex) {
+		private static CachedMat acquireMat(Vertex targetVertex) {
+			String rid = targetVertex.getRid();
+			while (true) {
+				CachedMat cachedMat = decodedMatCache.get(rid);
+				if (cachedMat == null) {
+					CachedMat decodedMat = new CachedMat(decodeVisualVertex(targetVertex));
+					cachedMat = decodedMatCache.putIfAbsent(rid, decodedMat);
+					//Other thread had beaten us to it, use theirs and discard ours.
+					if (cachedMat == null)
+						cachedMat = decodedMat;
+					else
+						decodedMat.evict();
+				}
+				//Evicted right after we get it, retry to decode it again.
+				if (cachedMat.acquire())
+					return cachedMat;
+			}
+		}
+
+		private static void releaseMat(CachedMat cachedMat) {
+			cachedMat.release();
+		}
+
+		private static Mat decodeVisualVertex(Vertex targetVertex) {
 			//get and save img data from/to DB
 			//http://stackoverflow.com/questions/25068645/classcastexception-when-trying-to-get-orecordbytes-with-orientdb-via-graph-api
 			Vertex dataVertex = Util.traverseOnce(targetVertex, Direction.IN, DBCN.E.data, LTM.VISUAL_RAW);
 
 			byte[] imageData = dataVertex.getProperty(LP.data);
-			//convert byte[] to Mat
-			//http://stackoverflow.com/questions/21113190/how-to-get-the-mat-object-from-the-byte-in-opencv-android
-			Mat frame = Imgcodecs.imdecode(new MatOfByte(imageData), Imgcodecs.CV_LOAD_IMAGE_UNCHANGED);
-			return frame;
+			return byteArrayToMat(imageData);
+		}
+
+		/**
+		 * Fetch binary image from specified vertex and convert it to openCV Mat format.
+		 * The image is decoded once and cached, the returned Mat is a copy owned by the caller, it can be modified and released freely.
+		 * @param targetVertex General Visual Vertex, the vertex that contain an edge to external data vertex which contain binary image data.
+		 * @return openCV Mat.
+		 */
+		public static Mat visualVertexToMat (Vertex targetVertex) {
+			CachedMat cachedMat = acquireMat(targetVertex);
+			try {
+				return cachedMat.mat.clone();
+			}
+			finally {
+				releaseMat(cachedMat);
+			}
 		}
 
 		public static Mat byteArrayToMat (byte[] byteArray) {
-			return Imgcodecs.imdecode(new MatOfByte(byteArray), Imgcodecs.CV_LOAD_IMAGE_UNCHANGED);
+			//convert byte[] to Mat
+			//http://stackoverflow.com/questions/21113190/how-to-get-the-mat-object-from-the-byte-in-opencv-android
+			//Release the encoded buffer right away instead of leaving it to GC finalizer.
+			MatOfByte encoded = new MatOfByte(byteArray);
+			try {
+				return Imgcodecs.imdecode(encoded, Imgcodecs.CV_LOAD_IMAGE_UNCHANGED);
+			}
+			finally {
+				encoded.release();
+			}
 		}
 
 		/**
@@ -424,15 +482,19 @@ public abstract class ICL {
 		 * @return The distribution value in terms of 0~100 percent.
 		 */
 		public static double scanVisualDistribution (Vertex targetVertex) {
-			Mat frame = visualVertexToMat(targetVertex);
-
-			//Opencv native mean code, add up scalar 3 value bgr, forth value is not added as it is alpha, if the channel doesn't
-			//exist, it returns 0, therefore it is fine even if it is grayscale. Divide by 3 to average it, then divide 255 (upper limit)
-			//to convert it to 0~1 scale, then * 100 to make it into percentage 0~100 scale.
-			Scalar mean = Core.mean(frame);
-			double distribution = (mean.val[0] + mean.val[1] + mean.val[2]) / 3d / 255d * 100d;
+			CachedMat cachedMat = acquireMat(targetVertex);
+			try {
+				//Opencv native mean code, add up scalar 3 value bgr, forth value is not added as it is alpha, if the channel doesn't
+				//exist, it returns 0, therefore it is fine even if it is grayscale. Divide by 3 to average it, then divide 255 (upper limit)
+				//to convert it to 0~1 scale, then * 100 to make it into percentage 0~100 scale.
+				Scalar mean = Core.mean(cachedMat.mat);
+				double distribution = (mean.val[0] + mean.val[1] + mean.val[2]) / 3d / 255d * 100d;
 
-			return distribution;
+				return distribution;
+			}
+			finally {
+				releaseMat(cachedMat);
+			}
 		}
 
 		/**
@@ -443,9 +505,13 @@ public abstract class ICL {
 		 */
 		//TODO: make it accept varags and return ArrayList of double[].
 		public static double[] getIndividualVisualData (Vertex targetVertex, Point coordinate) {
-			Mat frame = visualVertexToMat(targetVertex);
-
-			return frame.get(coordinate.x, coordinate.y);
+			CachedMat cachedMat = acquireMat(targetVertex);
+			try {
+				return cachedMat.mat.get(coordinate.x, coordinate.y);
+			}
+			finally {
+				releaseMat(cachedMat);
+			}
 		}
 
 		/**
@@ -455,16 +521,21 @@ public abstract class ICL {
 		 * @return A double[] which contains the BGR value of the pixel, immediately followed by next coordinate BGR in series until end of data.
 		 */
 		public static ArrayList<Double> getIndividualVisualData (Vertex targetVertex, ArrayList<Point> coordinate) {
-			Mat frame = visualVertexToMat(targetVertex);
-
-			ArrayList<Double> result = new ArrayList<Double>(coordinate.size()*frame.channels());
-			for (int i=0; i<coordinate.size(); i++) {
-				double[] pt = frame.get(coordinate.get(i).x, coordinate.get(i).y);
-				for (double d : pt) {
-					result.add(d);
+			CachedMat cachedMat = acquireMat(targetVertex);
+			try {
+				Mat frame = cachedMat.mat;
+				ArrayList<Double> result = new ArrayList<Double>(coordinate.size()*frame.channels());
+				for (int i=0; i<coordinate.size(); i++) {
+					double[] pt = frame.get(coordinate.get(i).x, coordinate.get(i).y);
+					for (double d : pt) {
+						result.add(d);
+					}
 				}
+				return result;
+			}
+			finally {
+				releaseMat(cachedMat);
 			}
-			return result;
 		}
 
 		/**
@@ -475,18 +546,31 @@ public abstract class ICL {
 		 * @return A value between 0~100 to indicate how relevant they are. 100 is exact match, 0 is no matching point at all.
 		 */
 		public static double getRelevancyVisualData(Vertex v1, Vertex v2, double thresholdInPolyVal) {
-			//convert byte[] to Mat
-			Mat v1Mat = visualVertexToMat(v1);
-			Mat v2Mat = visualVertexToMat(v2);
-
-			//the total count of pixels with channel as its padding
-			int arraySize = (int) (v1Mat.total() * v1Mat.channels());
-			byte v1Arr[] = new byte[arraySize];
-			byte v2Arr[] = new byte[arraySize];
-
-			//fetch the whole image at once and translate it into linear data format, separated into RGB, 3 index per pixel form.
-			v1Mat.get(0, 0, v1Arr);
-			v2Mat.get(0, 0, v2Arr);
+			//convert byte[] to Mat, cached.
+			CachedMat v1CachedMat = acquireMat(v1);
+			CachedMat v2CachedMat = null;
+			int arraySize;
+			byte v1Arr[];
+			byte v2Arr[];
+			try {
+				v2CachedMat = acquireMat(v2);
+				Mat v1Mat = v1CachedMat.mat;
+				Mat v2Mat = v2CachedMat.mat;
+
+				//the total count of pixels with channel as its padding
+				arraySize = (int) (v1Mat.total() * v1Mat.channels());
+				v1Arr = new byte[arraySize];
+				v2Arr = new byte[arraySize];
+
+				//fetch the whole image at once and translate it into linear data format, separated into RGB, 3 index per pixel form.
+				v1Mat.get(0, 0, v1Arr);
+				v2Mat.get(0, 0, v2Arr);
+			}
+			finally {
+				releaseMat(v1CachedMat);
+				if (v2CachedMat != null)
+					releaseMat(v2CachedMat);
+			}
 
 			//convert polyVal threshold specified in percent back to actual scale of visual data (0~255 uchar)
 			int convertedThreshold = (int) Util.polyValDenormalize(0, 255, thresholdInPolyVal);
@@ -510,6 +594,9 @@ public abstract class ICL {
 	 * Operate on byte directly instead of float, uses signed byte.
 	 */
 	public static class Audio {
+		//Our wav header is always 46 byte long, mono 16bit 44100hz.
+		private static final int audioHeaderLength = 46;
+
 		/**
 		 * Remove first 46 byte then we are left with the raw data for wav file type.
 		 * 0~45 = 46 byte, so index is 46 (inclusive), which basically means we will start from byte 47 (index 46).
@@ -517,7 +604,7 @@ public abstract class ICL {
 		 * @return Audio data without header, pure audio stream data only.
 		 */
 		public static byte[] trimAudioDataHeader(byte[] audioDataWithHeader) {
-			return Arrays.copyOfRange(audioDataWithHeader, 46, audioDataWithHeader.length);
+			return Arrays.copyOfRange(audioDataWithHeader, audioHeaderLength, audioDataWithHeader.length);
 		}
 
 		/**
@@ -535,7 +622,7 @@ public abstract class ICL {
 		 * @param audioDataWithHeader
 		 */
 		public static void setAudioDataHeader(byte[] audioDataWithHeader) {
-			audioHeader = Arrays.copyOfRange(audioDataWithHeader, 0, 46);
+			audioHeader = Arrays.copyOfRange(audioDataWithHeader, 0, audioHeaderLength);
 		}
 
 		/**
@@ -599,187 +686,21 @@ public abstract class ICL {
 		}
 
 		/**
-		 * Concatenate audio files into a single audio file and output it to the specified path.
-		 * @param pythonCommandFilePath The python script path for this operation, leave "" to use default script path.
-		 * @param outputPath Output path of the concatenated audio file.
-		 * @param toBeConcatenatedAudioDataVertexList List of generalVertexes where we have to tranverse once more via its data edge
-		 * to get to the data vertex whom data field contains the actual raw audio data.
-		 */
-		public static void concatenateAudioFilesByDataVertex(String pythonCommandFilePath, String outputPath
-				, Queue<String>toBeConcatenatedAudioGeneralVertexList, Graph txGraph) {
-			//Internally we uses python pydub library to make this work.
-			//Check whether user had given use the command file path, if not use the default path.
-			String commandFilePath = pythonCommandFilePath.equals("") ?
-					"python resources/audioICL/isra_audioICL_concatWav.py"
-					: pythonCommandFilePath;
-
-			//Convert rid to actual vertex.
-			//Saves all the audio data to file in order for the script to process, cannot pass them raw binary data directly.
-			ArrayList<String> audioFilePaths = new ArrayList<String>();
-			int indexCount = 0;
-			for (String audioVertexRid : toBeConcatenatedAudioGeneralVertexList) {
-				//Audio file path must be .wav (wave format) as all of our inputs are in wav.
-				//These audioFiles are temporary and will be replaced everytime we call this function.
-				String audioFilePath = "resources/audioICL/temp/dejavuConcat/concat-" + indexCount + ".wav";
-				Vertex audioGeneralVertex = Util.ridToVertex(audioVertexRid, txGraph);
-				Vertex audioDataVertex = Util.traverseOnce(audioGeneralVertex, Direction.IN, DBCN.E.data, LTM.AUDIO_RAW);
-				try {
-					FileUtils.writeByteArrayToFile(new File(audioFilePath), (byte[]) audioDataVertex.getProperty(LP.data) );
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Write byte array to file failed", e);
-				}
-
-				audioFilePaths.add(audioFilePath);
-				indexCount++;
-			}
-			//Append all the parameter required by the script.
-			commandFilePath = commandFilePath + " " + outputPath + " " + Util.arrayListOfStringToStringSeparatedBySpace(audioFilePaths);
-
-			//http://stackoverflow.com/questions/6295866/how-can-i-capture-the-output-of-a-command-as-a-string-with-commons-exec
-			//Execute the script.
-		    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		    CommandLine commandline = CommandLine.parse(commandFilePath);
-		    DefaultExecutor exec = new DefaultExecutor();
-		    PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
-		    exec.setStreamHandler(streamHandler);
-		    try {
-		    	exec.execute(commandline);
-		    } catch (IOException e) {
-		    	//If error occurs, means it is an internal script error. outputStream.toString() contains the stderr of the script output.
-		    	throw new IllegalStateException("Script execution error, command: " +  commandFilePath + "; Error: " + outputStream.toString(), e);
-		    }
-		}
-
-		/**
-		 * Fingerprint the latest concatenated audio file so it can be used to identify(recognize) pattern within it.
-		 * @param pythonCommandFilePath The python script path for this operation, leave "" to use default script path.
-		 * @param concatenatedAudioFilePath The concatenated audio file path that you used as outputPath parameter for concatenateAudioFilesByDataVertex
+		 * Recognize the given patterns from the audio window fingerprinted by the engine, its fingerprint is kept up to date
+		 * incrementally as frames are appended and evicted, nothing is concatenated nor refingerprinted here.
+		 * @param fingerprintEngine The engine holding the fingerprint of the current audio window.
+		 * @param audioPatternDataVertexList The audio vertex list containing actual extracted audio pattern data, stored without header.
+		 * @return The offset in milliseconds for each of the pattern, index matched with the given list, -1 if not matched.
 		 */
-		public static void fingerprintConcatenatedAudioFile(String pythonCommandFilePath, String concatenatedAudioFilePath) {
-			//http://stackoverflow.com/questions/6295866/how-can-i-capture-the-output-of-a-command-as-a-string-with-commons-exec
-			//The script support both fingerprint and recognize function, only fingerprint state should reset database to reflect the latest
-			//audio fingerprint, so they don't accidentally recognize it as another audio segment from previous time segments.
-			String operationType = " fingerprint ";
-			String resetDatabase = " true ";
-
-			//Check whether user had given use the command file path, if not use the default path.
-			String commandFilePath = pythonCommandFilePath.equals("") ?
-					"python resources/audioICL/isra_audioICL_fingerprintAndRecognize.py"
-					: pythonCommandFilePath;
-
-			//Append all the parameter required by the script.
-			commandFilePath = commandFilePath + operationType + resetDatabase + concatenatedAudioFilePath;
-
-			//http://stackoverflow.com/questions/6295866/how-can-i-capture-the-output-of-a-command-as-a-string-with-commons-exec
-			//Execute the script.
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			CommandLine commandline = CommandLine.parse(commandFilePath);
-			DefaultExecutor exec = new DefaultExecutor();
-			PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
-			exec.setStreamHandler(streamHandler);
-			try {
-				exec.execute(commandline);
-			} catch (IOException e) {
-				//If error occurs, means it is an internal script error. outputStream.toString() contains the stderr of the script output.
-				throw new IllegalStateException("Script execution error: " + outputStream.toString(), e);
-			}
-		}
-
-		/**
-		 * Fingerprint the latest concatenated audio file so it can be used to identify(recognize) pattern within it.
-		 * @param pythonCommandFilePath The python script path for this operation, leave "" to use default script path.
-		 * @param audioPatternDataVertexList The audio vertex list containing actual extracted audio pattern data.
-		 * @return The offset in milliseconds.
-		 */
-		public static ArrayList<Long> recognizePatternFromFingerprintedConcatenatedAudioFile(
-				String pythonCommandFilePath, ArrayList<Vertex> audioPatternDataVertexList) {
-			//http://stackoverflow.com/questions/6295866/how-can-i-capture-the-output-of-a-command-as-a-string-with-commons-exec
-			//The script support both fingerprint and recognize function, only fingerprint state should reset database to reflect the latest
-			//audio fingerprint, so they don't accidentally recognize it as another audio segment from previous time segments.
-			//Recognize state doesn't need to reset database as it make no sense (empty database, recognize from what?)
-			String operationType = " recognize ";
-			String resetDatabase = " false ";
-
-			//Check whether user had given use the command file path, if not use the default path.
-			String commandFilePath = pythonCommandFilePath.equals("") ?
-					"python resources/audioICL/isra_audioICL_fingerprintAndRecognize.py"
-					: pythonCommandFilePath;
-
-			//Saves all the pattern audio data to file in order for the script to process, we cannot pass them raw binary data directly.
-			ArrayList<String> audioPatternFilePaths = new ArrayList<String>();
-			for (int i=0; i<audioPatternDataVertexList.size(); i++) {
-				//Audio file path must be .wav (wave format) as all of our inputs are in wav.
-				//These audioFiles are temporary and will be replaced everytime we call this function.
-				//We must add in its default audio header as they are trimmed before storage to save space.
-				String audioPatternFilePath = "resources/audioICL/temp/dejavuRecognize/audioPattern-" + i + ".wav";
-				try {
-					FileUtils.writeByteArrayToFile(new File(audioPatternFilePath),
-							ICL.Audio.insertAudioDataHeader( (byte[]) audioPatternDataVertexList.get(i).getProperty(LP.data) ) );
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Write byte array to file failed", e);
-				}
-
-				audioPatternFilePaths.add(audioPatternFilePath);
-			}
-
-			//Append all the parameter required by the script and run them individually. Although the script can accept multiple element
-			//at a time, but we are too lazy to sort their aggregated output, thus one output per time simpler processing.
-			//TODO: Use its multiple element processing by appending all of the fileName at once to them to speed things up but have to
-			//decipher the result independently, not implmented now.
-			//Example:commandFilePath = commandFilePath + operationType + resetDatabase + Util.arrayListOfStringToStringSeparatedBySpace(audioPatternFilePaths);
-
-			ArrayList<Long> result = new ArrayList<Long>();
-			//This is similar to the fingerprint parameter style, in fact they uses the same script.
-			for (int i=0; i<audioPatternFilePaths.size(); i++) {
-				String finalCommandFilePath = commandFilePath + operationType + resetDatabase + audioPatternFilePaths.get(i);
-
-				//http://stackoverflow.com/questions/6295866/how-can-i-capture-the-output-of-a-command-as-a-string-with-commons-exec
-				//Execute the script.
-			    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			    CommandLine commandline = CommandLine.parse(finalCommandFilePath);
-			    DefaultExecutor exec = new DefaultExecutor();
-			    PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
-			    exec.setStreamHandler(streamHandler);
-			    try {
-			    	exec.execute(commandline);
-			    } catch (IOException e) {
-			    	//If error occurs, means it is an internal script error. outputStream.toString() contains the stderr of the script output.
-			    	throw new IllegalStateException("Script execution error: " + outputStream.toString(), e);
-			    }
-
-			    String outputOfScript = outputStream.toString();
-			    //'None' is the library print statement indicated not match and we do not recommend to modify anything in the lib thus we just use that value.
-			    if (outputOfScript.contains("None"))
-			    	result.add(-1l);
-			    //Else it should return a string of data about the matching process, we will fetch the time offset.
-			    //{'song_id': 1, 'song_name': 'Taylor Swift - Shake It Off', 'confidence': 3948, 'offset_seconds': 30.00018, 'match_time': 0.7159781455993652, 'offset': 646L}
-			    //Extract offset_seconds from it and convert it into millisec.
-			    //https://github.com/worldveil/dejavu/issues/43
-			    else {
-			    	String offsetSeconds = outputOfScript.substring(outputOfScript.indexOf("seconds': ") + 10, outputOfScript.indexOf(", 'match") );
-			        //Trim the seconds and milliseconds, ignoring the the remaining trailing milliseconds precision and trim it to millisecond (000) 3 digits.
-			    	String sec = offsetSeconds.substring(0, offsetSeconds.indexOf("."));
-
-			        //Check whether the trailing digits has enough value for us, we need 3 digits.
-			    	String millisec = "";
-			    	//If it doesn't have enough digits for us, we will get whatever he have, and add trailing zeros.
-			    	if ( (offsetSeconds.indexOf(".") + 4) > offsetSeconds.length()) {
-			    		millisec = offsetSeconds.substring(offsetSeconds.indexOf(".") + 1, offsetSeconds.length());
-			    		while (millisec.length() < 3)
-			    			millisec += "0";
-			    	}
-			    	//Else if have enough digits or even exceeds. Grab only 3 digits.
-			    	else
-			    		millisec = offsetSeconds.substring(offsetSeconds.indexOf(".") + 1, offsetSeconds.indexOf(".") + 4);
-
-			        //Convert seconds into milliseconds and add in the remaining milliseconds.
-			        long offsetInMillisec = (Long.parseLong(sec) * 1000) + Long.parseLong(millisec);
-
-			        assert offsetInMillisec >= 0 : offsetInMillisec;
-			        result.add(offsetInMillisec);
-			    }
+		public static ArrayList<Long> recognizePatternFromFingerprintedAudioData(
+				AudioFingerprint fingerprintEngine, ArrayList<Vertex> audioPatternDataVertexList) {
+			ArrayList<Long> result = new ArrayList<Long>(audioPatternDataVertexList.size());
+			for (Vertex audioPatternDataVertex : audioPatternDataVertexList) {
+				//Patterns are trimmed of header before storage, thus can be decoded directly.
+				double[] pattern = Util.audioByteArrayToDoubleArray( (byte[]) audioPatternDataVertex.getProperty(LP.data) );
+				long offsetInMillisec = fingerprintEngine.recognizeOffsetMilli(pattern);
+				assert offsetInMillisec >= -1 : offsetInMillisec;
+				result.add(offsetInMillisec);
 			}
 			return result;
 		}
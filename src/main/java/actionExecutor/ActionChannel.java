@@ -0,0 +1,267 @@
+package actionExecutor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logger.Logger.CLA;
+import logger.Logger.Credential;
+import logger.Logger.LVL;
+import startup.StartupSoft;
+
+/**
+ * Long lived output channel to the external actuator device (rpi), replaces the old 'new socket + yml per action' way.
+ * Caller enqueue action into a bounded queue and return immediately, a single daemon sender thread owns the socket, drains the
+ * queue and writes them as binary frame, reconnecting on its own whenever the connection drops.
+ * Caller never waits, GCA frame must never be stalled by slow device. If the device cannot keep up (or is away) and the queue is full,
+ * the oldest queued action is dropped (counted) in favor of the new one, for actuator only the latest command matters.
+ * For the same reason action older than maxFrameAgeMilli by the time it is about to be written is discarded (counted) instead of sent,
+ * so a reconnect doesn't replay a burst of stale motor and speaker frame to the device.
+ *
+ * Frame format, all big endian (DataOutputStream):
+ * [int length of the rest][byte version][long sequence][long issue timestamp epoch milli][long send timestamp epoch milli]
+ * [double motor1][double motor2][double motor3][double motor4][int speaker length][byte[] speaker]
+ * -1 for motor means no change for that motor, same as the old POInterchange convention.
+ * Both timestamp are carried so the receiver can measure queueing delay and wire + actuation delay separately.
+ */
+public class ActionChannel {
+	public static final byte frameVersion = 1;
+
+	private final String host;
+	private final int port;
+	private final long maxFrameAgeMilli;
+	private final ArrayBlockingQueue<ActionFrame> queue;
+	private final Thread senderThread;
+	private volatile boolean halt = false;
+	private volatile boolean connected = false;
+	//Current socket, kept so halt can unblock a sender stuck in write.
+	private volatile Socket socket = null;
+
+	private final Credential logCredential;
+
+	//Reconnect backoff, doubles on every consecutive failure until max.
+	private static final long minReconnectWaitMilli = 50l;
+	private static final long maxReconnectWaitMilli = 2000l;
+	private static final int connectTimeoutMilli = 1000;
+
+	//Statistics, for actuation latency measurement. Queue latency = send time - issue time.
+	private final AtomicLong sequence = new AtomicLong(0);
+	private final AtomicLong sentCount = new AtomicLong(0);
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	private final AtomicLong staleCount = new AtomicLong(0);
+	private final AtomicLong reconnectCount = new AtomicLong(0);
+	private final AtomicLong totalQueueLatencyMilli = new AtomicLong(0);
+	private final AtomicLong maxQueueLatencyMilli = new AtomicLong(0);
+
+	private static class ActionFrame {
+		final long sequence;
+		final long issueTimestamp;
+		final double motor1;
+		final double motor2;
+		final double motor3;
+		final double motor4;
+		final byte[] speaker;
+
+		ActionFrame(long sequence, long issueTimestamp, double motor1, double motor2, double motor3, double motor4, byte[] speaker) {
+			this.sequence = sequence;
+			this.issueTimestamp = issueTimestamp;
+			this.motor1 = motor1;
+			this.motor2 = motor2;
+			this.motor3 = motor3;
+			this.motor4 = motor4;
+			this.speaker = speaker;
+		}
+	}
+
+	/**
+	 * Start the channel, connection is made by the sender thread in background, so this never blocks even if device is offline.
+	 * @param queueCapacity Maximum pending action, oldest is dropped beyond this.
+	 * @param maxFrameAgeMilli Action that had waited longer than this since issued is discarded instead of sent.
+	 */
+	public ActionChannel(String host, int port, int queueCapacity, long maxFrameAgeMilli) {
+		if (host == null || host.isEmpty())
+			throw new IllegalArgumentException("Actuator host is not specified.");
+		this.host = host;
+		this.port = port;
+		this.maxFrameAgeMilli = maxFrameAgeMilli;
+		this.queue = new ArrayBlockingQueue<ActionFrame>(queueCapacity);
+		this.logCredential = new Credential();
+
+		senderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sendLoop();
+			}
+		});
+		senderThread.setName("ActionChannel-" + host + ":" + port);
+		senderThread.setDaemon(true);
+		senderThread.start();
+	}
+
+	/**
+	 * Queue an action to be sent, timestamped now. Never blocks, the oldest queued action is dropped if the queue is full.
+	 * @param speaker Raw audio data, empty array if none.
+	 * @return False if channel halted.
+	 */
+	public boolean send(double motor1, double motor2, double motor3, double motor4, byte[] speaker) {
+		if (halt)
+			return false;
+		ActionFrame frame = new ActionFrame(sequence.getAndIncrement(), System.currentTimeMillis(), motor1, motor2, motor3, motor4
+				, speaker == null ? new byte[0] : speaker);
+		//Retry as the slot we freed may be taken by another caller in between.
+		while (!queue.offer(frame)) {
+			if (queue.poll() != null)
+				droppedCount.incrementAndGet();
+		}
+		return true;
+	}
+
+	private void sendLoop() {
+		long reconnectWaitMilli = minReconnectWaitMilli;
+		while (!halt) {
+			try {
+				socket = new Socket();
+				socket.setTcpNoDelay(true);
+				socket.connect(new InetSocketAddress(host, port), connectTimeoutMilli);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				connected = true;
+				reconnectWaitMilli = minReconnectWaitMilli;
+
+				while (!halt) {
+					ActionFrame frame = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (frame == null)
+						continue;
+					//Batch whatever is already pending into a single flush, then flush once the queue is drained.
+					//Those queued during disconnection or backlog that had gone stale are skipped.
+					while (frame != null) {
+						if (System.currentTimeMillis() - frame.issueTimestamp > maxFrameAgeMilli)
+							staleCount.incrementAndGet();
+						else
+							writeFrame(out, frame);
+						frame = queue.poll();
+					}
+					out.flush();
+				}
+			}
+			catch (IOException e) {
+				if (!halt) {
+					StartupSoft.logger.log(logCredential, LVL.WARN, CLA.EXCEPTION, "Action channel to " + host + ":" + port
+							+ " lost, reconnecting in " + reconnectWaitMilli + "ms.", e);
+				}
+			}
+			catch (InterruptedException e) {
+				break;
+			}
+			finally {
+				connected = false;
+				try {
+					socket.close();
+				} catch (IOException e) {
+					//Already broken, nothing to do.
+				}
+			}
+
+			if (halt)
+				break;
+			reconnectCount.incrementAndGet();
+			try {
+				Thread.sleep(reconnectWaitMilli);
+			} catch (InterruptedException e) {
+				break;
+			}
+			reconnectWaitMilli = Math.min(reconnectWaitMilli * 2, maxReconnectWaitMilli);
+		}
+	}
+
+	private void writeFrame(DataOutputStream out, ActionFrame frame) throws IOException {
+		long sendTimestamp = System.currentTimeMillis();
+		//version + sequence + 2 timestamp + 4 motor + speaker length + speaker.
+		out.writeInt(1 + 8 + 8 + 8 + 8 * 4 + 4 + frame.speaker.length);
+		out.writeByte(frameVersion);
+		out.writeLong(frame.sequence);
+		out.writeLong(frame.issueTimestamp);
+		out.writeLong(sendTimestamp);
+		out.writeDouble(frame.motor1);
+		out.writeDouble(frame.motor2);
+		out.writeDouble(frame.motor3);
+		out.writeDouble(frame.motor4);
+		out.writeInt(frame.speaker.length);
+		out.write(frame.speaker);
+
+		long queueLatency = sendTimestamp - frame.issueTimestamp;
+		sentCount.incrementAndGet();
+		totalQueueLatencyMilli.addAndGet(queueLatency);
+		long max = maxQueueLatencyMilli.get();
+		while (queueLatency > max && !maxQueueLatencyMilli.compareAndSet(max, queueLatency))
+			max = maxQueueLatencyMilli.get();
+	}
+
+	/**
+	 * Stop the sender thread and close the connection, pending action are discarded.
+	 */
+	public void halt() {
+		halt = true;
+		senderThread.interrupt();
+		Socket current = socket;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				//Closing anyway.
+			}
+		}
+		try {
+			senderThread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		queue.clear();
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	public int getPendingCount() {
+		return queue.size();
+	}
+
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * @return Number of action dropped by a full queue, the oldest of them.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return Number of action discarded for being older than maxFrameAgeMilli when it was about to be sent.
+	 */
+	public long getStaleCount() {
+		return staleCount.get();
+	}
+
+	public long getReconnectCount() {
+		return reconnectCount.get();
+	}
+
+	/**
+	 * @return Average time an action waited between issue and being written to the socket, -1 if nothing sent yet.
+	 */
+	public double getAverageQueueLatencyMilli() {
+		long sent = sentCount.get();
+		return sent == 0 ? -1d : (double)totalQueueLatencyMilli.get() / (double)sent;
+	}
+
+	public long getMaxQueueLatencyMilli() {
+		return maxQueueLatencyMilli.get();
+	}
+}
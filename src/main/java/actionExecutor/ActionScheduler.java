@@ -1,11 +1,9 @@
 package actionExecutor;
 
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.net.Socket;
 
 import org.apache.commons.io.FileUtils;
 
@@ -37,6 +35,13 @@ public abstract class ActionScheduler {
 	//TODO: Temporary variable, to make output to use direct path instead of native forwarding to RPI.
 	public static boolean noRpi = false;
 
+	//Persistent channel to the device, created on first use. Queue holds about 1 sec worth of GCA frames (10ms per frame), oldest
+	//is dropped if it is full. Action not sent within 5 GCA frames is outdated and discarded instead of replayed late.
+	private static ActionChannel actionChannel = null;
+	public static final int actionChannelPort = 45000;
+	private static final int actionChannelQueueCapacity = 100;
+	private static final long actionChannelMaxFrameAgeMilli = StartupSoft.milliPerGCAFrame * 5;
+
 	/*
 	 * Must call this for the 'execute' function to work.
 	 */
@@ -61,6 +66,17 @@ public abstract class ActionScheduler {
 		}
 	}
 
+	/**
+	 * Get the shared device channel, connect lazily on first use.
+	 */
+	public static synchronized ActionChannel getActionChannel() {
+		//Null url falls back to loopback, same as what plain Socket did previously, for local stand in receiver.
+		if (actionChannel == null)
+			actionChannel = new ActionChannel(rpiUrl == null ? "localhost" : rpiUrl, actionChannelPort, actionChannelQueueCapacity
+					, actionChannelMaxFrameAgeMilli);
+		return actionChannel;
+	}
+
 	/**
 	 * Execute the given process immediately.
 	 * @param processDataVertex Any POFeedBack general vertex.
@@ -131,18 +147,11 @@ public abstract class ActionScheduler {
 		}
 
 		if (noRpi) {
-			System.out.println("Action Scheduler: waiting receiver to accept socket connection.");
-
-			//Send data to receiver.
-			Socket toDeviceSocket;
-			try {
-				//No need to close stream, close only socket, close socket on the final receiver operation. We are not final receiver here so
-				//no close socket.
-				toDeviceSocket = new Socket(rpiUrl, 45000);
-				DataOutputStream toDevStream = new DataOutputStream(toDeviceSocket.getOutputStream());
-				toDevStream.writeUTF(Util.objectToYml(POOutputToDev));
-			} catch (IOException e) {
-				StartupSoft.logger.log(new Credential(), LVL.ERROR, CLA.EXCEPTION, "Action scheduler failed to connect socket.", e);
+			//Send data to receiver over the shared persistent channel, it reconnects by itself if the device went away.
+			if (!getActionChannel().send(POOutputToDev.motor1, POOutputToDev.motor2, POOutputToDev.motor3, POOutputToDev.motor4
+					, POOutputToDev.speaker1)) {
+				StartupSoft.logger.log(new Credential(), LVL.WARN, CLA.NORM, "Action scheduler dropped action, device channel halted. Pending: "
+						+ actionChannel.getPendingCount() + ", dropped total: " + actionChannel.getDroppedCount());
 			}
 		}
 
@@ -0,0 +1,161 @@
+package crawler;
+
+import java.util.Arrays;
+
+/**
+ * Fixed capacity sliding window of the latest decoded audio frames used by RawDataICL audio ICL.
+ * Samples and their processed counter are stored in primitive rings, so appending a frame only copies the new frame and
+ * evicting the oldest frame is just moving the head, no shifting and no re-fetching from DB.
+ * Frame bookkeeping (rid, timestamp and sample length) are kept in their own ring of maximumFrame size.
+ * Index given to all the sample accessor are relative to the oldest sample still within the window (0 = oldest).
+ * NOTE: Not thread safe, owned by a single RawDataICL instance.
+ */
+class AudioWindow {
+	private final int maximumFrame;
+
+	//Sample ring, processedCount maps 1 to 1 to the sample, incremented every time the sample is covered by a pattern.
+	private double[] sample;
+	private int[] processedCount;
+	private int sampleHead = 0;
+	private int sampleSize = 0;
+	//Total sample ever appended, sample index counted from the very first appended sample is (evictedSampleCount + relative index).
+	private long evictedSampleCount = 0;
+
+	//Frame ring.
+	private final String[] frameRid;
+	private final long[] frameTimestamp;
+	private final int[] frameLength;
+	private int frameHead = 0;
+	private int frameSize = 0;
+
+	/**
+	 * @param maximumFrame Maximum number of frame to be kept, oldest frame will be evicted when exceeded.
+	 * @param expectedSamplePerFrame Initial sample capacity per frame, the sample ring grows if frames turn out to be larger.
+	 */
+	AudioWindow(int maximumFrame, int expectedSamplePerFrame) {
+		if (maximumFrame <= 0 || expectedSamplePerFrame <= 0)
+			throw new IllegalArgumentException("Invalid window size, frame: " + maximumFrame + " sample per frame: " + expectedSamplePerFrame);
+		this.maximumFrame = maximumFrame;
+		sample = new double[maximumFrame * expectedSamplePerFrame];
+		processedCount = new int[sample.length];
+		frameRid = new String[maximumFrame];
+		frameTimestamp = new long[maximumFrame];
+		frameLength = new int[maximumFrame];
+	}
+
+	/**
+	 * Append a frame at the back of the window, evicting the oldest frame if the window is already full.
+	 * New samples are marked as never processed.
+	 * @return Number of sample evicted from the head to make room for it.
+	 */
+	int append(String rid, long timestamp, double[] frameSample) {
+		int evicted = 0;
+		if (frameSize == maximumFrame) {
+			int oldestLength = frameLength[frameHead];
+			frameRid[frameHead] = null;
+			frameHead = (frameHead + 1) % maximumFrame;
+			frameSize--;
+			sampleHead = (sampleHead + oldestLength) % sample.length;
+			sampleSize -= oldestLength;
+			evictedSampleCount += oldestLength;
+			evicted = oldestLength;
+		}
+
+		if (sampleSize + frameSample.length > sample.length)
+			grow(sampleSize + frameSample.length);
+
+		//Copy in at most 2 chunk as it may wrap around the end of the ring.
+		int tail = (sampleHead + sampleSize) % sample.length;
+		int firstChunk = Math.min(frameSample.length, sample.length - tail);
+		System.arraycopy(frameSample, 0, sample, tail, firstChunk);
+		Arrays.fill(processedCount, tail, tail + firstChunk, 0);
+		if (firstChunk < frameSample.length) {
+			System.arraycopy(frameSample, firstChunk, sample, 0, frameSample.length - firstChunk);
+			Arrays.fill(processedCount, 0, frameSample.length - firstChunk, 0);
+		}
+		sampleSize += frameSample.length;
+
+		int frameTail = (frameHead + frameSize) % maximumFrame;
+		frameRid[frameTail] = rid;
+		frameTimestamp[frameTail] = timestamp;
+		frameLength[frameTail] = frameSample.length;
+		frameSize++;
+		return evicted;
+	}
+
+	/**
+	 * Unroll the ring into a larger one, only happens if frames are larger than expected.
+	 */
+	private void grow(int minimumCapacity) {
+		int newCapacity = Math.max(minimumCapacity, sample.length * 2);
+		double[] newSample = new double[newCapacity];
+		int[] newProcessedCount = new int[newCapacity];
+		for (int i=0; i<sampleSize; i++) {
+			int physical = (sampleHead + i) % sample.length;
+			newSample[i] = sample[physical];
+			newProcessedCount[i] = processedCount[physical];
+		}
+		sample = newSample;
+		processedCount = newProcessedCount;
+		sampleHead = 0;
+	}
+
+	private int physicalIndex(int index) {
+		if (index < 0 || index >= sampleSize)
+			throw new IndexOutOfBoundsException("Index: " + index + " size: " + sampleSize);
+		return (sampleHead + index) % sample.length;
+	}
+
+	int sampleSize() {
+		return sampleSize;
+	}
+
+	int frameSize() {
+		return frameSize;
+	}
+
+	double getSample(int index) {
+		return sample[physicalIndex(index)];
+	}
+
+	/**
+	 * Copy out the samples within the given range.
+	 * @param from Inclusive.
+	 * @param to Exclusive.
+	 */
+	double[] copySample(int from, int to) {
+		if (from < 0 || to > sampleSize || from > to)
+			throw new IndexOutOfBoundsException("Range: " + from + "~" + to + " size: " + sampleSize);
+		double[] result = new double[to - from];
+		for (int i=from; i<to; i++)
+			result[i - from] = sample[(sampleHead + i) % sample.length];
+		return result;
+	}
+
+	int getProcessedCount(int index) {
+		return processedCount[physicalIndex(index)];
+	}
+
+	void incrementProcessedCount(int index) {
+		processedCount[physicalIndex(index)]++;
+	}
+
+	/**
+	 * Sample index of the oldest sample within the window, counted from the very first appended sample.
+	 */
+	long getEvictedSampleCount() {
+		return evictedSampleCount;
+	}
+
+	String getFirstFrameRid() {
+		if (frameSize == 0)
+			throw new IllegalStateException("Audio window is empty.");
+		return frameRid[frameHead];
+	}
+
+	long getFirstFrameTimestamp() {
+		if (frameSize == 0)
+			throw new IllegalStateException("Audio window is empty.");
+		return frameTimestamp[frameHead];
+	}
+}
@@ -30,7 +30,9 @@ public class Crawler implements Runnable {
 
 	private Credential logCredential;
 
-	private static final long noWorkSleepMilli = 10;
+	//No work wait time, we are woken up immediately if task is committed within this process, else this acts as the fallback poll interval.
+	//Tasks assigned by STMServer of other node are only seen by this poll, keep it within one GCA frame same as the old idle sleep.
+	private static final long noWorkMaxWaitMilli = StartupSoft.milliPerGCAFrame;
 
 	/**
 	 * Call this to initialize crawler manager, then call run() will start the service loop (receive commands, auto push tasks to worker nodes)
@@ -101,14 +103,12 @@ public class Crawler implements Runnable {
 			//Set the logger in order to use shorthand version of finalizeTask().
 			txGraph.loggerSet(StartupSoft.logger, logCredential);
 
-			//Get the next task vertex.
-			Vertex taskVertex = STMClient.getNextCrawlerTask(config.storageId, txGraph);
+			//Get the next task vertex, block until one arrives if the queue is empty.
+			Vertex taskVertex = STMClient.getNextCrawlerTask(config.storageId, txGraph, noWorkMaxWaitMilli);
 			//taskVertex can be null if the task class doesn't exist (error or during halt where it drop the class) OR the queue is empty.
 			//So we will continue to keep checking the state to see whether it is time to halt and also wait for potential new task input.
-			if (taskVertex == null) {
-				Util.sleep(noWorkSleepMilli);
+			if (taskVertex == null)
 				continue;
-			}
 
 			Vertex taskDetailVertex = null;
 			try {
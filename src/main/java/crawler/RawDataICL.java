@@ -1,14 +1,8 @@
 package crawler;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 
 import org.opencv.core.Core;
 import org.opencv.core.DMatch;
@@ -28,6 +22,11 @@ import org.opencv.features2d.FeatureDetector;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
+import ICL.AudioFingerprint;
 import ICL.ICL;
 import isradatabase.Direction;
 import isradatabase.Graph;
@@ -64,6 +63,54 @@ public class RawDataICL {
 	private Credential logCredential;
 	private boolean loggerSet;
 
+	/**
+	 * Pattern templates never change once stored, thus their decoded image, BRISK keypoints and descriptors are computed once
+	 * and cached by the pattern data vertex rid. LRU bounded by their native size in KB (same as ICL's decoded image cache), evicted
+	 * entries release their native memory immediately instead of waiting for GC to finalize them.
+	 */
+	private static class VisualTemplate {
+		final Mat template;
+		final MatOfKeyPoint keyPoints;
+		final Mat descriptor;
+		final Scalar mean;
+		//Fixed once created, native size of all 3 mats in KB.
+		final int weightKB;
+
+		VisualTemplate(Mat template, MatOfKeyPoint keyPoints, Mat descriptor) {
+			this.template = template;
+			this.keyPoints = keyPoints;
+			this.descriptor = descriptor;
+			this.mean = Core.mean(template);
+			long bytes = template.total() * template.elemSize() + keyPoints.total() * keyPoints.elemSize()
+					+ descriptor.total() * descriptor.elemSize();
+			this.weightKB = (int) Math.max(1l, bytes / 1024l);
+		}
+
+		void release() {
+			template.release();
+			keyPoints.release();
+			descriptor.release();
+		}
+	}
+	//64MB worth of template per crawler.
+	private static final long visualTemplateCacheCapacityKB = 64l * 1024l;
+	private final ConcurrentLinkedHashMap<String, VisualTemplate> visualTemplateCache =
+			new ConcurrentLinkedHashMap.Builder<String, VisualTemplate>()
+			.maximumWeightedCapacity(visualTemplateCacheCapacityKB)
+			.weigher(new Weigher<VisualTemplate>() {
+				@Override
+				public int weightOf(VisualTemplate template) {
+					return template.weightKB;
+				}
+			})
+			.listener(new EvictionListener<String, VisualTemplate>() {
+				@Override
+				public void onEviction(String rid, VisualTemplate evicted) {
+					evicted.release();
+				}
+			})
+			.build();
+
 	public RawDataICL(long dbErrMaxRetryCount, long dbErrRetrySleepTime, Logger logger, Credential logCredential) {
 		this.dbErrMaxRetryCount = dbErrMaxRetryCount;
 		this.dbErrRetrySleepTime = dbErrRetrySleepTime;
@@ -126,17 +173,32 @@ public class RawDataICL {
 		extractor.compute(srcImgMat, matOfKeyPointsOriginal, descriptorOriginal);
 		DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
 
+		//Template too large to ever fit the cache, used by the current iteration only and released once it is done.
+		VisualTemplate uncachedTemplate = null;
 		//Calculate relevancy for predefined pattern only fetched from STM, generated by crude grouping or GCA composite pattern.
 		for (Vertex v : patternList) {
 			assert v.getCName().equals(DBCN.V.LTM.rawDataICL.visual.cn) : v;
-			//Basically the same operation as above (Extract and match pattern).
-			MatOfKeyPoint matOfKeyPointsTemplate = new MatOfKeyPoint();
-			Mat template = ICL.Visual.byteArrayToMat( (byte[])(v.getProperty(LP.data)) );
-
-			brisk.detect(template, matOfKeyPointsTemplate);
+			if (uncachedTemplate != null) {
+				uncachedTemplate.release();
+				uncachedTemplate = null;
+			}
+			//Basically the same operation as above (Extract and match pattern), but only done once per pattern then cached.
+			VisualTemplate cachedTemplate = visualTemplateCache.get(v.getRid());
+			if (cachedTemplate == null) {
+				MatOfKeyPoint matOfKeyPointsTemplate = new MatOfKeyPoint();
+				Mat decodedTemplate = ICL.Visual.byteArrayToMat( (byte[])(v.getProperty(LP.data)) );
+				brisk.detect(decodedTemplate, matOfKeyPointsTemplate);
+				Mat decodedDescriptorTemplate = new Mat();
+				extractor.compute(decodedTemplate, matOfKeyPointsTemplate, decodedDescriptorTemplate);
+				cachedTemplate = new VisualTemplate(decodedTemplate, matOfKeyPointsTemplate, decodedDescriptorTemplate);
+				//Cache would evict (and release) it right away on put while we are still using it.
+				if (cachedTemplate.weightKB > visualTemplateCacheCapacityKB)
+					uncachedTemplate = cachedTemplate;
+				else
+					visualTemplateCache.put(v.getRid(), cachedTemplate);
+			}
+			Mat descriptorTemplate = cachedTemplate.descriptor;
 
-			Mat descriptorTemplate = new Mat();
-			extractor.compute(template, matOfKeyPointsTemplate, descriptorTemplate);
 			MatOfDMatch descriptorMatches = new MatOfDMatch();
 			matcher.match(descriptorOriginal, descriptorTemplate, descriptorMatches);
 
@@ -189,7 +251,7 @@ public class RawDataICL {
 			//become grayscale(source image), thus we utilize channel count to be safe.
 			Mat extractedOriginal = new Mat(srcImgMat, ROIRect);
 			Scalar meanOriginal = Core.mean(extractedOriginal);
-			Scalar meanTemplate = Core.mean(template);
+			Scalar meanTemplate = cachedTemplate.mean;
 			double totalMeanDifferences = 0.0d;
 			for (int i=0; i< srcImgMat.channels(); i++) {
 				//Absolute value of mean differences.
@@ -253,7 +315,7 @@ public class RawDataICL {
 
 				//Record how many pixels is in the template, as we had completed it, so we add its count to the total
 				//number of processed pixels.
-				processedPixelCount += template.width() * template.height();
+				processedPixelCount += cachedTemplate.template.width() * cachedTemplate.template.height();
 
 				//http://docs.opencv.org/java/2.4.9/org/opencv/core/Rect.html
 				//Mark the ROI region as matched.
@@ -264,9 +326,11 @@ public class RawDataICL {
 					}
 				}
 				if (loggerSet)
-					logger.log(logCredential, LVL.INFO, CLA.NORM, "RawDataICL identified pattern, size:" + template.width() * template.height());
+					logger.log(logCredential, LVL.INFO, CLA.NORM, "RawDataICL identified pattern, size:" + cachedTemplate.template.width() * cachedTemplate.template.height());
 			}
 		}
+		if (uncachedTemplate != null)
+			uncachedTemplate.release();
 
 		if (patternList.size() != 0) {
 			if (loggerSet)
@@ -411,17 +475,15 @@ public class RawDataICL {
 	 * the same data over and over again until it goes expired (replaced by new data).
 	 */
 	private int audioFullSampleStartReadingFromIndex = 0;
-	/**
-	 * Used by audio ICL to record which byte of data had been processed, increment by 1 every time it got processed.
-	 * Equivalent to real audio data' index mapping, so when audio data got updated (dispose old data and append new data at the end),
-	 * this list gets updated as well (replace old data with preceding data and for the new data input, leave them as 0, not processed).
-	 */
-	private ArrayList<Integer> audioProcessedIndex = new ArrayList<Integer>();
 
-	//Each frame is 50ms, 20 frame 1 sec, 200 frame 10 sec. The latestAudioFrameList stores the RID of the latest frames only instead of
-	//the actual data.
+	//Each frame is 50ms (2205 sample at 44100hz), 20 frame 1 sec, 200 frame 10 sec. The window keeps the decoded samples of the latest
+	//frames with their rid, and which sample had been processed, increment by 1 every time it got processed. When new frame arrives
+	//the oldest frame is dropped and the new samples are marked as 0, not processed.
 	private final int maximumInMemoryAudioFrame = 200;
-	private Queue<String> latestAudioFrameList = new LinkedList<String>();
+	private AudioWindow latestAudioWindow = new AudioWindow(maximumInMemoryAudioFrame, 2205);
+
+	//In-JVM fingerprint engine holding the index of the latest audio window, fed incrementally with new frame only. 44100hz mono input.
+	private AudioFingerprint audioFingerprint = new AudioFingerprint(44100);
 
 	//TODO: we omitted the parallel design here. You might want to parallelize it to enable more pattern identification.
 	/*
@@ -446,47 +508,27 @@ public class RawDataICL {
 	 * @param txGraph
 	 */
 	public void audioICLTxL(Vertex generalVertex, double globalDist, Graph txGraph) {
-		//If the latest audio file list had already reached the stated maximum, we remove its head and append new data vertex rid
-		//at its back to update the whole list.  Else just add it in until it reached the specified maximum.
-		if (latestAudioFrameList.size() >= maximumInMemoryAudioFrame) {
-			latestAudioFrameList.poll();
-			latestAudioFrameList.offer(generalVertex.getRid());
-			int audioLength = ICL.Audio.audioVertexToDoubleArray(generalVertex).length;
+		//Append the new frame to the window, if the window had already reached the stated maximum, its oldest frame is dropped.
+		//Only the new frame is fetched and decoded, the rest of the window is already in memory.
+		double[] newAudioData = ICL.Audio.audioVertexToDoubleArray(generalVertex);
+		long newAudioTimestamp = generalVertex.getProperty(LP.timeStamp);
+		int evictedLength = latestAudioWindow.append(generalVertex.getRid(), newAudioTimestamp, newAudioData);
+		if (evictedLength > 0) {
 			//Move the processed point backward as new data comes in, to allow code below to start reading from
 			//the correct check point in order to avoid recomputing the same data thus yield many duplicate pattern.
 			//By this it will skip the processed part thus no duplicate pattern, all fresh.
-			//-1 to show index length instead of actual length.
-			audioFullSampleStartReadingFromIndex -= audioLength - 1;
-			//Move the processed index forward, then mark the trailing data as 0 as they were never processed before (new).
-			for (int i=0; i<audioProcessedIndex.size() - audioLength; i++) {
-				audioProcessedIndex.set(i, audioProcessedIndex.get(i+audioLength));
-			}
-			for (int i=audioProcessedIndex.size() - audioLength; i<audioProcessedIndex.size(); i++) {
-				audioProcessedIndex.set(i, 0);
-			}
+			audioFullSampleStartReadingFromIndex = Math.max(0, audioFullSampleStartReadingFromIndex - evictedLength);
 		}
-		else {
-			latestAudioFrameList.offer(generalVertex.getRid());
-			//Add more index to the processed progress recording array to adhere to the mapping of the newly expanded data length.
-			int audioLength = ICL.Audio.audioVertexToDoubleArray(generalVertex).length;
-			for (int i=0; i<audioLength; i++)
-				audioProcessedIndex.add(0);
-		}
-		String concatCommandScriptFilePath = "";
-		String concatenatedOutputFilePath = "resources/audioICL/temp/dejavuConcat/concat.wav";
-		//Concatenate all those frames into a single file for fingerprinting purposes.
-		ICL.Audio.concatenateAudioFilesByDataVertex(concatCommandScriptFilePath, concatenatedOutputFilePath, latestAudioFrameList, txGraph);
 
-		//Fingerprint the latest concatenated audio file.
-		String fingerprintCommandScriptFilePath = "";
-		ICL.Audio.fingerprintConcatenatedAudioFile(fingerprintCommandScriptFilePath, concatenatedOutputFilePath);
+		//Fingerprint only the new samples and expire the fingerprint of the dropped frame.
+		audioFingerprint.append(newAudioData);
+		audioFingerprint.evictBefore(latestAudioWindow.getEvictedSampleCount());
 
 		//Pair against all the ICL pattern given to us with the just fingerprinted latest audio data.
 		//Note that fetchedDemandedPatternVertexList AND patternMatches are of same size and they have the same mapping of one to one.
 		ArrayList<Vertex> fetchedDemandedPatternVertexList = STMClient.getLatestRawDataPatternByGCA("Audio", txGraph);
-		String recognizeCommandScriptFilePath = "";
-		ArrayList<Long> patternMatchesOffset = ICL.Audio.recognizePatternFromFingerprintedConcatenatedAudioFile(
-				recognizeCommandScriptFilePath, fetchedDemandedPatternVertexList);
+		ArrayList<Long> patternMatchesOffset = ICL.Audio.recognizePatternFromFingerprintedAudioData(
+				audioFingerprint, fetchedDemandedPatternVertexList);
 		assert fetchedDemandedPatternVertexList.size() == patternMatchesOffset.size()
 				: fetchedDemandedPatternVertexList.size() + " " + patternMatchesOffset.size();
 
@@ -528,8 +570,7 @@ public class RawDataICL {
 					patternDataVertex.setProperty(LP.data, audioPatternData);
 					//Get the beginning timestamp of the sample that used to pair against the pattern, then add in the offset
 					//to reflect correctly the absolute time of this pattern regarding to real world absolute time.
-					String firstAudioVertexRid = latestAudioFrameList.peek();
-					long absoluteStartTimestamp = Util.ridToVertex(firstAudioVertexRid, txGraph).getProperty(LP.timeStamp);
+					long absoluteStartTimestamp = latestAudioWindow.getFirstFrameTimestamp();
 					patternDataVertex.setProperty(LP.audioAbsTimestamp, absoluteStartTimestamp + patternMatchesOffset.get(i));
 					patternDataVertex.addEdge(DBCN.E.data, patternGeneralVertex);
 
@@ -563,25 +604,25 @@ public class RawDataICL {
 				//Trim the index to avoid out of bound error due to tiny underflow or overflow.
 				if (startingIndex < 0)
 					startingIndex = 0;
-				if (startingIndex >= audioProcessedIndex.size())
-					startingIndex = audioProcessedIndex.size() -1;
+				if (startingIndex >= latestAudioWindow.sampleSize())
+					startingIndex = latestAudioWindow.sampleSize() -1;
 				for (int processedIndex=startingIndex; processedIndex<patternLength; processedIndex++) {
 					//If the pattern exceed current available data length, possible as we don't have to match it as a whole
 					//to mark it as pass, thus the data may be not inbound yet, thus we will ignore them.
-					if (processedIndex == audioProcessedIndex.size() - 1)
+					if (processedIndex == latestAudioWindow.sampleSize() - 1)
 						break;
 					//Else we just increment it by 1 to mark it as had just been processed once more.
-					audioProcessedIndex.set(processedIndex, audioProcessedIndex.get(processedIndex) + 1);
+					latestAudioWindow.incrementProcessedCount(processedIndex);
 				}
 
 				if (loggerSet)
 					logger.log(logCredential, LVL.INFO, CLA.NORM,
-						"RawDataICL audio pattern matched. Size: " + patternLength);
+						"RawDataICL audio pattern matched. Size: " + patternLength + " Window start: " + latestAudioWindow.getFirstFrameRid());
 			}
 		}
 
 		//Recognize new stray audio data pattern from the input to broaden knowledge.
-		//Get the concatenated audio file.
+		//Run directly on the window.
 		/*
 		 * We uses home brew algorithm to do the pattern separation:
 		 * Low Band Cutoff Pattern Extraction:
@@ -593,206 +634,196 @@ public class RawDataICL {
 		 *
 		 * Look at audioLowBandExtractPatternSampleOutput.png for sample output.
 		 */
-		Path path = Paths.get(concatenatedOutputFilePath);
-		try {
-			byte[] data = Files.readAllBytes(path);
-			double[] fullAudioData = Util.audioByteArrayToDoubleArray( ICL.Audio.trimAudioDataHeader(data) );
-
-			//Low band cut off.
-			//3 type heading declaration.
-			final int HEADING_UP = 0;
-			final int HEADING_DOWN = 1;
-			final int MAINTAIN = 2;
-			ArrayList<java.awt.Point> intersectPoint = new ArrayList<java.awt.Point>();
-			ArrayList<Integer> intersectState = new ArrayList<Integer>();
-
-			//cutOffThreshold can only be negative! As it is low band, thus negative.
-			double cutOffThreshold = -0.1;
-			assert cutOffThreshold < 0;
-			//-1 as we will do +1 to get to next point for 2 point calculation, thus -1 to avoid out of bound.
-			//Start from the checkpoint (last point that processes end) to avoid recomputing the point that had already been done.
-			for (int i=audioFullSampleStartReadingFromIndex; i<fullAudioData.length - 1; i++) {
-				//Check 2 point, there can be 3 condition, 6 possible orientation.
-				//View Audio_lowBand_cutoff_peakDetection_possibleSituation_overview.jpeg.
-				double d1 = fullAudioData[i];
-				double d2 = fullAudioData[i+1];
-
-				//Up to Down (Heading downward). eg d1 = 0.3, d2 = -0.4
-				if (d1 > cutOffThreshold && d2 < cutOffThreshold) {
-					intersectPoint.add(new java.awt.Point(i, i+1));
-					intersectState.add(HEADING_DOWN);
-				}
-				//Down to Up (Heading upward). eg d1 = -0.4, d2 = 0.3
-				else if (d1 < cutOffThreshold && d2 > cutOffThreshold) {
-					intersectPoint.add(new java.awt.Point(i, i+1));
-					intersectState.add(HEADING_UP);
-				}
-				//On the same line as the threshold (equal). eg d1 = -0.1, d2 = -0.1, threshold = -0.1
-				else if (d1 == d2 && d1 == cutOffThreshold) {
-					intersectPoint.add(new java.awt.Point(i, i+1));
-					intersectState.add(MAINTAIN);
-				}
-				//Down to up, up to down or equal but doesn't pass through or touches the cut off line.
-				else {
-					;
-				}
+		//Low band cut off.
+		//3 type heading declaration.
+		final int HEADING_UP = 0;
+		final int HEADING_DOWN = 1;
+		final int MAINTAIN = 2;
+		ArrayList<java.awt.Point> intersectPoint = new ArrayList<java.awt.Point>();
+		ArrayList<Integer> intersectState = new ArrayList<Integer>();
+
+		//cutOffThreshold can only be negative! As it is low band, thus negative.
+		double cutOffThreshold = -0.1;
+		assert cutOffThreshold < 0;
+		//-1 as we will do +1 to get to next point for 2 point calculation, thus -1 to avoid out of bound.
+		//Start from the checkpoint (last point that processes end) to avoid recomputing the point that had already been done.
+		for (int i=audioFullSampleStartReadingFromIndex; i<latestAudioWindow.sampleSize() - 1; i++) {
+			//Check 2 point, there can be 3 condition, 6 possible orientation.
+			//View Audio_lowBand_cutoff_peakDetection_possibleSituation_overview.jpeg.
+			double d1 = latestAudioWindow.getSample(i);
+			double d2 = latestAudioWindow.getSample(i+1);
+
+			//Up to Down (Heading downward). eg d1 = 0.3, d2 = -0.4
+			if (d1 > cutOffThreshold && d2 < cutOffThreshold) {
+				intersectPoint.add(new java.awt.Point(i, i+1));
+				intersectState.add(HEADING_DOWN);
+			}
+			//Down to Up (Heading upward). eg d1 = -0.4, d2 = 0.3
+			else if (d1 < cutOffThreshold && d2 > cutOffThreshold) {
+				intersectPoint.add(new java.awt.Point(i, i+1));
+				intersectState.add(HEADING_UP);
+			}
+			//On the same line as the threshold (equal). eg d1 = -0.1, d2 = -0.1, threshold = -0.1
+			else if (d1 == d2 && d1 == cutOffThreshold) {
+				intersectPoint.add(new java.awt.Point(i, i+1));
+				intersectState.add(MAINTAIN);
 			}
+			//Down to up, up to down or equal but doesn't pass through or touches the cut off line.
+			else {
+				;
+			}
+		}
 
-			//Begin grouping them into individual signals. We want a DOWN, UP, DOWN 3 step sequence.
-			//So instead of 2 step (end up like a bum), it becomes a stylish square root symbol + a downward straight tail.
-			//Note the first beginning signal will be longer than all other as it begins at random.
-			ArrayList<java.awt.Point> groupedSignal = new ArrayList<java.awt.Point>();
-			boolean down = false;
-			for (int i=0; i<intersectPoint.size(); i++) {
-				if (intersectState.get(i) == HEADING_DOWN) {
-					if (!down) {
-						down = true;
-					}
-					//Already down once. Thus this is second down (already up once so it can come down again).
-					//3 step done, also mean it is the end of the signal.
-					else {
-						//One's end is another's start, always use end point instead of start point so it will not leave a trailing unused
-						//end point coordinate at the really end.
-
-						//It is expected that the grouped signal total output size will be greater than the total output size of the original result
-						//as the duplicate the starting point of each signal to make it jointed. Else it will be broken and not contagious.
-						//At intersect point index there, we used the end index twice to make sure it has no hole, thus added in 1 additional element
-						//for each iteration (pattern).
-						//Update the checkpoint (last point processed) so we will not compute it again next time.
-						int intersectPointEndIndex = intersectPoint.get(i).y;
-						groupedSignal.add(new java.awt.Point(audioFullSampleStartReadingFromIndex, intersectPointEndIndex));
-						audioFullSampleStartReadingFromIndex = intersectPointEndIndex;
-						down = false;
-					}
+		//Begin grouping them into individual signals. We want a DOWN, UP, DOWN 3 step sequence.
+		//So instead of 2 step (end up like a bum), it becomes a stylish square root symbol + a downward straight tail.
+		//Note the first beginning signal will be longer than all other as it begins at random.
+		ArrayList<java.awt.Point> groupedSignal = new ArrayList<java.awt.Point>();
+		boolean down = false;
+		for (int i=0; i<intersectPoint.size(); i++) {
+			if (intersectState.get(i) == HEADING_DOWN) {
+				if (!down) {
+					down = true;
+				}
+				//Already down once. Thus this is second down (already up once so it can come down again).
+				//3 step done, also mean it is the end of the signal.
+				else {
+					//One's end is another's start, always use end point instead of start point so it will not leave a trailing unused
+					//end point coordinate at the really end.
+
+					//It is expected that the grouped signal total output size will be greater than the total output size of the original result
+					//as the duplicate the starting point of each signal to make it jointed. Else it will be broken and not contagious.
+					//At intersect point index there, we used the end index twice to make sure it has no hole, thus added in 1 additional element
+					//for each iteration (pattern).
+					//Update the checkpoint (last point processed) so we will not compute it again next time.
+					int intersectPointEndIndex = intersectPoint.get(i).y;
+					groupedSignal.add(new java.awt.Point(audioFullSampleStartReadingFromIndex, intersectPointEndIndex));
+					audioFullSampleStartReadingFromIndex = intersectPointEndIndex;
+					down = false;
 				}
 			}
+		}
 
-			//This is cancelled due to the fact that we will still going to be keep receive data, thus keep trimming the edge is
-			//not correct but instead should wait and see if the new coming data has been pattern end point.
-			//Thus do nothing here.
+		//This is cancelled due to the fact that we will still going to be keep receive data, thus keep trimming the edge is
+		//not correct but instead should wait and see if the new coming data has been pattern end point.
+		//Thus do nothing here.
 //			//Join the tail if the last signal doesn't reach the absolute end.
 //			if (audioFullSampleStartReadingFromIndex != fullAudioData.length - 1) {
 //				groupedSignal.add(new java.awt.Point(audioFullSampleStartReadingFromIndex, fullAudioData.length - 1));
 //			}
 
-			//TODO: Bruteforce ICL in the future to identify pattern that were recognized before but not presented via expectation
-			//(via pattern feedback).
-
-			//Filter out already recognized region and recognize segmented audio as new stray pattern if they are not recognized yet.
-			ArrayList<java.awt.Point> finalStraySignalGroup = new ArrayList<java.awt.Point>();
-			for (int i=0; i<groupedSignal.size(); i++) {
-				//If the matching rate is below 25%, mark it as a stray.
-				int startIndex = groupedSignal.get(i).x;
-				int endIndex = groupedSignal.get(i).y;
-
-				int matchedCount = 0;
-				//+1 to convert it from index to size.
-				for (int matchIndex=startIndex; matchIndex<endIndex+1; matchIndex++) {
-					if (audioProcessedIndex.get(matchIndex) != 0)
-						matchedCount++;
-				}
-				double matchedPercentage = ( (double)matchedCount / (double)(endIndex - startIndex) ) * 100d;
+		//TODO: Bruteforce ICL in the future to identify pattern that were recognized before but not presented via expectation
+		//(via pattern feedback).
+
+		//Filter out already recognized region and recognize segmented audio as new stray pattern if they are not recognized yet.
+		ArrayList<java.awt.Point> finalStraySignalGroup = new ArrayList<java.awt.Point>();
+		for (int i=0; i<groupedSignal.size(); i++) {
+			//If the matching rate is below 25%, mark it as a stray.
+			int startIndex = groupedSignal.get(i).x;
+			int endIndex = groupedSignal.get(i).y;
+
+			int matchedCount = 0;
+			//+1 to convert it from index to size.
+			for (int matchIndex=startIndex; matchIndex<endIndex+1; matchIndex++) {
+				if (latestAudioWindow.getProcessedCount(matchIndex) != 0)
+					matchedCount++;
+			}
+			double matchedPercentage = ( (double)matchedCount / (double)(endIndex - startIndex) ) * 100d;
 
-				if (matchedPercentage < 25d) {
-					finalStraySignalGroup.add(groupedSignal.get(i));
+			if (matchedPercentage < 25d) {
+				finalStraySignalGroup.add(groupedSignal.get(i));
 
-					//Mark those regions as processed.
-					for (int matchIndex=startIndex; matchIndex<endIndex; matchIndex++) {
-						audioProcessedIndex.set(i, audioProcessedIndex.get(i) + 1);
-					}
+				//Mark those regions as processed.
+				for (int matchIndex=startIndex; matchIndex<endIndex; matchIndex++) {
+					latestAudioWindow.incrementProcessedCount(i);
 				}
 			}
+		}
 
-			//Seek for any stray pattern that lurks in between segments (overlapping) that missed the stray pattern matching
-			//capture above, ignoring any data after last grouped signal end as they are to be appended with new incoming data.
-			int startIndex = 0;
-			//Minimum pattern size, will skip it if smaller than it.
-			int minimumPatternSize = 10;
-			boolean patternStarted = false;
-			//Must check else it may throw out of bound exception during grouped signal access.
-			if (!groupedSignal.isEmpty()) {
-				for (int i=0; i<groupedSignal.get(groupedSignal.size()-1).y; i++) {
-					//0 means never processed before.
-					if (audioProcessedIndex.get(i) == 0) {
-						if (!patternStarted) {
-							patternStarted = true;
-							startIndex = i;
-						}
-						//If pattern already started, do nothing until we meet the break point (a non 0 value).
+		//Seek for any stray pattern that lurks in between segments (overlapping) that missed the stray pattern matching
+		//capture above, ignoring any data after last grouped signal end as they are to be appended with new incoming data.
+		int startIndex = 0;
+		//Minimum pattern size, will skip it if smaller than it.
+		int minimumPatternSize = 10;
+		boolean patternStarted = false;
+		//Must check else it may throw out of bound exception during grouped signal access.
+		if (!groupedSignal.isEmpty()) {
+			for (int i=0; i<groupedSignal.get(groupedSignal.size()-1).y; i++) {
+				//0 means never processed before.
+				if (latestAudioWindow.getProcessedCount(i) == 0) {
+					if (!patternStarted) {
+						patternStarted = true;
+						startIndex = i;
 					}
-					else {
-						if (patternStarted) {
-							patternStarted = false;
-							//Only register it if its size is larger than the permitted minimum size.
-							if (i - startIndex > minimumPatternSize) {
-								finalStraySignalGroup.add(new java.awt.Point(startIndex, i));
-							}
+					//If pattern already started, do nothing until we meet the break point (a non 0 value).
+				}
+				else {
+					if (patternStarted) {
+						patternStarted = false;
+						//Only register it if its size is larger than the permitted minimum size.
+						if (i - startIndex > minimumPatternSize) {
+							finalStraySignalGroup.add(new java.awt.Point(startIndex, i));
 						}
-						//If pattern not started and the data is already processed before (non 0), ignore it.
 					}
+					//If pattern not started and the data is already processed before (non 0), ignore it.
 				}
 			}
-			//TODO: Should you capture the last pattern that may be started but not ended due out of bound? Currently no.
-
-			for (int i=0; i<finalStraySignalGroup.size(); i++) {
-				//+1 as it is not inclusive by default.
-				double[] dataForThisSignal = Arrays.copyOfRange(fullAudioData, finalStraySignalGroup.get(i).x, finalStraySignalGroup.get(i).y + 1);
-				byte[] binaryDataRepresentation = Util.audioDoubleArrayToByteArray(dataForThisSignal);
-
-				Vertex patternGeneralVertex = null;
-
-				//Commit retry model.
-				boolean txError = true;
-				int txRetried = 0;
-				while (txError) {
-					if (txRetried > dbErrMaxRetryCount) {
-						throw new IllegalStateException("Failed to complete transaction after number of retry:"
-								+ dbErrMaxRetryCount + " with sleep duration of each:" + dbErrRetrySleepTime);
-					}
-					else if (txError) {
-						if (txRetried != 0)
-							Util.sleep(dbErrRetrySleepTime);
-						txRetried++;
-					}
-					txGraph.begin();
+		}
+		//TODO: Should you capture the last pattern that may be started but not ended due out of bound? Currently no.
+
+		for (int i=0; i<finalStraySignalGroup.size(); i++) {
+			//+1 as it is not inclusive by default.
+			double[] dataForThisSignal = latestAudioWindow.copySample(finalStraySignalGroup.get(i).x, finalStraySignalGroup.get(i).y + 1);
+			byte[] binaryDataRepresentation = Util.audioDoubleArrayToByteArray(dataForThisSignal);
+
+			Vertex patternGeneralVertex = null;
+
+			//Commit retry model.
+			boolean txError = true;
+			int txRetried = 0;
+			while (txError) {
+				if (txRetried > dbErrMaxRetryCount) {
+					throw new IllegalStateException("Failed to complete transaction after number of retry:"
+							+ dbErrMaxRetryCount + " with sleep duration of each:" + dbErrRetrySleepTime);
+				}
+				else if (txError) {
+					if (txRetried != 0)
+						Util.sleep(dbErrRetrySleepTime);
+					txRetried++;
+				}
+				txGraph.begin();
 
-					generalVertex = Util.vReload(generalVertex, txGraph);
+				generalVertex = Util.vReload(generalVertex, txGraph);
 
-					//Create 2 vertex to store the result, as it doens't match any given pattern, it is not entitled to have an
-					//'occurrence' edge toward any other pattern as he is new and stray without origin.
-					patternGeneralVertex = txGraph.addVertex(DBCN.V.general.rawDataICL.audio.cn
-							, DBCN.V.general.rawDataICL.audio.cn);
-					Vertex patternDataVertex = txGraph.addVertex(DBCN.V.LTM.rawDataICL.audio.cn, DBCN.V.LTM.rawDataICL.audio.cn);
+				//Create 2 vertex to store the result, as it doens't match any given pattern, it is not entitled to have an
+				//'occurrence' edge toward any other pattern as he is new and stray without origin.
+				patternGeneralVertex = txGraph.addVertex(DBCN.V.general.rawDataICL.audio.cn
+						, DBCN.V.general.rawDataICL.audio.cn);
+				Vertex patternDataVertex = txGraph.addVertex(DBCN.V.LTM.rawDataICL.audio.cn, DBCN.V.LTM.rawDataICL.audio.cn);
 
-					patternDataVertex.setProperty(LP.data, binaryDataRepresentation);
-					//For generated pattern, just use current time.
-					patternDataVertex.setProperty(LP.audioAbsTimestamp, System.currentTimeMillis());
-					patternDataVertex.addEdge(DBCN.E.data, patternGeneralVertex);
+				patternDataVertex.setProperty(LP.data, binaryDataRepresentation);
+				//For generated pattern, just use current time.
+				patternDataVertex.setProperty(LP.audioAbsTimestamp, System.currentTimeMillis());
+				patternDataVertex.addEdge(DBCN.E.data, patternGeneralVertex);
 
-					//the vertex that this vertex origin from is the raw data vertex that contains the raw data.
-					patternGeneralVertex.addEdge(DBCN.E.parent, generalVertex);
+				//the vertex that this vertex origin from is the raw data vertex that contains the raw data.
+				patternGeneralVertex.addEdge(DBCN.E.parent, generalVertex);
 
-					txError = txGraph.finalizeTask(true);
-				}
+				txError = txGraph.finalizeTask(true);
+			}
 
-				//Start a new transaction to avoid retry induced data inconsistency at GCA site. To guarantee idempotent.
-				txGraph.begin();
-				//TODO: should be the polyVal of the dist, not the globalDist, but uses that for simplicity.
-				patternGeneralVertex.setProperty(LP.polyVal, globalDist);
-				STMClient.addDist((double) patternGeneralVertex.getProperty(LP.polyVal), DBCN.V.general.rawDataICL.audio.cn, txGraph);
+			//Start a new transaction to avoid retry induced data inconsistency at GCA site. To guarantee idempotent.
+			txGraph.begin();
+			//TODO: should be the polyVal of the dist, not the globalDist, but uses that for simplicity.
+			patternGeneralVertex.setProperty(LP.polyVal, globalDist);
+			STMClient.addDist((double) patternGeneralVertex.getProperty(LP.polyVal), DBCN.V.general.rawDataICL.audio.cn, txGraph);
 
-				//Add general vertex to GCA-able space.
-				STMClient.rawDataICLAddToGCAQueue(patternGeneralVertex, txGraph);
-				txGraph.finalizeTask();
+			//Add general vertex to GCA-able space.
+			STMClient.rawDataICLAddToGCAQueue(patternGeneralVertex, txGraph);
+			txGraph.finalizeTask();
 
-				if (loggerSet)
-					logger.log(logCredential, LVL.INFO, CLA.NORM,
-						"RawDataICL audio stray pattern registered. Size: " + binaryDataRepresentation.length);
-			}
-		}
-		catch (IOException e) {
-			throw new IllegalStateException("File just generated but gone missing, did you removed it manully during runtime? "
-					+ "Filename is: " + concatenatedOutputFilePath);
+			if (loggerSet)
+				logger.log(logCredential, LVL.INFO, CLA.NORM,
+					"RawDataICL audio stray pattern registered. Size: " + binaryDataRepresentation.length);
 		}
 	}
 
@@ -1,6 +1,7 @@
 package isradatabase;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 
 import com.tinkerpop.blueprints.impls.orient.OrientEdge;
 import com.tinkerpop.blueprints.impls.orient.OrientVertex;
@@ -25,6 +26,32 @@ public abstract class DBUtil {
 			result.add(backendVtoIsraV(v));
 		return result;
 	}
+	/**
+	 * Lazily convert iterables of blueprint's vertexes into israVertex, each vertex will only be wrapped when it is consumed.
+	 * Caller can stop early without paying for the remaining copy.
+	 */
+	public static Iterator<Vertex> backendIterableVtoIsraIteratorV(Iterable<?> vertexes) {
+		return backendIteratorVtoIsraIteratorV(vertexes.iterator());
+	}
+	/**
+	 * Lazily convert iterator of blueprint's vertexes into israVertex, see backendIterableVtoIsraIteratorV.
+	 */
+	public static Iterator<Vertex> backendIteratorVtoIsraIteratorV(final Iterator<?> backendItr) {
+		return new Iterator<Vertex>() {
+			@Override
+			public boolean hasNext() {
+				return backendItr.hasNext();
+			}
+			@Override
+			public Vertex next() {
+				return backendVtoIsraV( (com.tinkerpop.blueprints.Vertex) backendItr.next() );
+			}
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Remove the vertex itself via Vertex.remove() instead.");
+			}
+		};
+	}
 	/**
 	 * Convert blueprint's edge into OrientDB edge then to israEdge.
 	 */
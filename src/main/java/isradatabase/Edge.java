@@ -16,12 +16,21 @@ public class Edge {
 	public <T> T getProperty(LP linkProperty) {
 		return oe.getProperty(linkProperty.toString());
 	}
+	public long getLongProperty(LP linkProperty) {
+		Number value = oe.getProperty(linkProperty.toString());
+		if (value == null)
+			throw new IllegalStateException("Property " + linkProperty + " doesn't exist on edge " + getRid());
+		return value.longValue();
+	}
 	public void setProperty(LP linkProperty, Object property) {
 		oe.setProperty(linkProperty.toString(), property);
 	}
 	public String getRid() {
 		return oe.getIdentity().toString();
 	}
+	public Rid getRidValue() {
+		return Rid.of(oe.getIdentity().getClusterId(), oe.getIdentity().getClusterPosition());
+	}
 	public void remove() {
 		oe.remove();
 	}
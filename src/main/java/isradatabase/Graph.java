@@ -1,9 +1,15 @@
 package isradatabase;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.sql.OCommandSQL;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 import com.tinkerpop.blueprints.impls.orient.OrientDynaElementIterable;
@@ -29,6 +35,10 @@ public class Graph {
 	private boolean loggerSet = false;
 	private Logger pLogger = null;
 	private Credential pLogCredential = null;
+	//Commit hook, class of vertexes added within the current transaction, signaled to QueueSignal waiters after a successful commit.
+	private final HashSet<String> uncommittedVertexClass = new HashSet<String>();
+	//Actions to run once the current transaction committed successfully, discarded on rollback or failed commit.
+	private final ArrayList<Runnable> uncommittedHook = new ArrayList<Runnable>();
 
 	/**
 	 * Optionally setup logging system, if set, can use the shorthand version of finalizeTask (the one without having to specify logging param).
@@ -49,11 +59,19 @@ public class Graph {
 		Iterable<com.tinkerpop.blueprints.Vertex> vertexes = txGraph.getVerticesOfClass(iClassName, false);
 		return DBUtil.backendIterableVtoIsraArraylistV(vertexes);
 	}
+	/**
+	 * Streaming version of getVertices, vertex are wrapped lazily only when consumed, no intermediate list is built.
+	 * Caller may stop early, remaining results are never wrapped.
+	 */
 	public Iterator<Vertex> getVerticesItr(String arg0, String[] arg1, Object[] arg2) {
-		return getVertices(arg0, arg1, arg2).iterator();
+		return DBUtil.backendIterableVtoIsraIteratorV(txGraph.getVertices(arg0, arg1, arg2));
 	}
+	/**
+	 * Streaming version of getVerticesOfClass, backed by the backend's cluster scan cursor.
+	 * Use this for queue classes that may grow large, eg task queues, as the eager version copies everything before any work starts.
+	 */
 	public Iterator<Vertex> getVerticesOfClassItr(String iClassName) {
-		return getVerticesOfClass(iClassName).iterator();
+		return DBUtil.backendIterableVtoIsraIteratorV(txGraph.getVerticesOfClass(iClassName, false));
 	}
 	/**
 	 * Get the latest vertex of class. Null if not available.
@@ -68,40 +86,114 @@ public class Graph {
 		 * This is extremely fast and doesn't require classic ordering resources (RAM and CPU):
 		 * select from Profile order by @rid desc
 		 */
-		ArrayList<Vertex> vertexes = directQueryExpectVertex("select from " + className + " order by @rid desc limit 1");
-		if (!vertexes.isEmpty())
-			return vertexes.get(0);
+		Iterator<Vertex> vertexes = preparedQueryExpectVertexItr("select from " + className + " order by @rid desc limit 1");
+		if (vertexes.hasNext())
+			return vertexes.next();
 		else
 			return null;
 	}
 	public Vertex getFirstVertexOfClass(String className) {
-		ArrayList<Vertex> vertexes = directQueryExpectVertex("select from " + className + " order by @rid limit 1");
-		if (!vertexes.isEmpty())
-			return vertexes.get(0);
+		Iterator<Vertex> vertexes = preparedQueryExpectVertexItr("select from " + className + " order by @rid limit 1");
+		if (vertexes.hasNext())
+			return vertexes.next();
 		else
 			return null;
 	}
 	public Vertex getSecondVertexOfClass(String className) {
-		ArrayList<Vertex> vertexes = directQueryExpectVertex("select from " + className + " order by @rid limit 2");
+		ArrayList<Vertex> vertexes = preparedQueryExpectVertex("select from " + className + " order by @rid limit 2");
 		return vertexes.get(1);
 	}
+	/**
+	 * Load vertex directly by its record id through the backend record API, no SQL parsing or planning involved.
+	 * @param rid String form rid, eg #12:345.
+	 * @return The vertex, null if the record doesn't exist.
+	 */
+	public Vertex getVertexByRid(String rid) {
+		OrientVertex ov = txGraph.getVertex(new ORecordId(rid));
+		return ov == null ? null : DBUtil.backendVtoIsraV(ov);
+	}
+	/**
+	 * Bulk version of getVertexByRid, order preserved, records that doesn't exist are skipped (same as 'SELECT FROM [rid,...]').
+	 */
+	public ArrayList<Vertex> getVerticesByRid(List<String> rids) {
+		ArrayList<Vertex> result = new ArrayList<Vertex>(rids.size());
+		for (String rid : rids) {
+			OrientVertex ov = txGraph.getVertex(new ORecordId(rid));
+			if (ov != null)
+				result.add( DBUtil.backendVtoIsraV(ov) );
+		}
+		return result;
+	}
+	/**
+	 * Compact Rid version of getVertexByRid, record id built from its cluster id and position without parsing.
+	 */
+	public Vertex getVertexByRid(Rid rid) {
+		OrientVertex ov = txGraph.getVertex(new ORecordId(rid.getClusterId(), rid.getClusterPosition()));
+		return ov == null ? null : DBUtil.backendVtoIsraV(ov);
+	}
+	public ArrayList<Vertex> getVerticesByRidValue(List<Rid> rids) {
+		ArrayList<Vertex> result = new ArrayList<Vertex>(rids.size());
+		for (Rid rid : rids) {
+			OrientVertex ov = txGraph.getVertex(new ORecordId(rid.getClusterId(), rid.getClusterPosition()));
+			if (ov != null)
+				result.add( DBUtil.backendVtoIsraV(ov) );
+		}
+		return result;
+	}
 	public void begin() {
 		txGraph.begin();
 	}
 	public void commit() {
 		txGraph.commit();
+		signalCommitted();
 	}
 	public void rollback() {
+		discardUncommitted();
 		txGraph.rollback();
 	}
 	public void shutdown() {
+		discardUncommitted();
 		txGraph.shutdown();
 	}
 	public void setAutoStartTx(boolean autoStartTx) {
 		txGraph.setAutoStartTx(autoStartTx);
 	}
 	public Vertex addVertex(String iClassName, String iClusterName) {
-		return DBUtil.backendVtoIsraV(txGraph.addVertex(iClassName, iClusterName));
+		Vertex result = DBUtil.backendVtoIsraV(txGraph.addVertex(iClassName, iClusterName));
+		uncommittedVertexClass.add(iClassName);
+		return result;
+	}
+
+	/**
+	 * Register an action to be run right after the current transaction commits successfully, it will never run if the transaction
+	 * is rolled back or failed to commit, thus safe to be registered again within commit retry model.
+	 * For in memory side effect that must only happen once the data they describe is durable.
+	 */
+	public void addCommitHook(Runnable hook) {
+		uncommittedHook.add(hook);
+	}
+
+	/**
+	 * Wake up waiters of every class that got new vertex in the transaction just committed, then run the registered commit hooks.
+	 */
+	private void signalCommitted() {
+		if (!uncommittedVertexClass.isEmpty()) {
+			for (String className : uncommittedVertexClass)
+				QueueSignal.signal(className);
+			uncommittedVertexClass.clear();
+		}
+		if (!uncommittedHook.isEmpty()) {
+			//Copy out first, hook may start another transaction on this same graph.
+			ArrayList<Runnable> hooks = new ArrayList<Runnable>(uncommittedHook);
+			uncommittedHook.clear();
+			for (Runnable hook : hooks)
+				hook.run();
+		}
+	}
+
+	private void discardUncommitted() {
+		uncommittedVertexClass.clear();
+		uncommittedHook.clear();
 	}
 
 	/**
@@ -119,6 +211,82 @@ public class Graph {
 			result.add( DBUtil.backendVtoIsraV((OrientVertex)odeIterator.next()) );
 		return result;
 	}
+	/**
+	 * Streaming version of directQueryExpectVertex, result vertexes are wrapped lazily only when consumed.
+	 * @param queryCommand Full SQL command.
+	 * @return An iterator over the resulting vertexes.
+	 */
+	public Iterator<Vertex> directQueryExpectVertexItr(String queryCommand) {
+		OSQLSynchQuery<OrientVertex> query = new OSQLSynchQuery<OrientVertex>(queryCommand);
+		OrientDynaElementIterable odeIterable = txGraph.command(query).execute();
+		return DBUtil.backendIterableVtoIsraIteratorV(odeIterable);
+	}
+	/**
+	 * Prepared version of directQueryExpectVertex, values are bound to the '?' placeholder instead of being concatenated into
+	 * the text, see ParameterizedStatement.
+	 * NOTE: Backend does not forward parameters into sub query, only use placeholder at the outermost query.
+	 * @param querySql SQL command with '?' placeholders.
+	 * @param params Value for each placeholder in order, rid must be wrapped by rid().
+	 */
+	public ArrayList<Vertex> preparedQueryExpectVertex(String querySql, Object... params) {
+		ParameterizedStatement prepared = ParameterizedStatement.of(querySql);
+		OSQLSynchQuery<OrientVertex> query = new OSQLSynchQuery<OrientVertex>(prepared.getSql());
+		OrientDynaElementIterable odeIterable = txGraph.command(query).execute(prepared.bind(params));
+		ArrayList<Vertex> result = new ArrayList<Vertex>();
+		for (Object o : odeIterable)
+			result.add( DBUtil.backendVtoIsraV((OrientVertex)o) );
+		return result;
+	}
+	/**
+	 * Streaming version of preparedQueryExpectVertex.
+	 */
+	public Iterator<Vertex> preparedQueryExpectVertexItr(String querySql, Object... params) {
+		ParameterizedStatement prepared = ParameterizedStatement.of(querySql);
+		OSQLSynchQuery<OrientVertex> query = new OSQLSynchQuery<OrientVertex>(prepared.getSql());
+		OrientDynaElementIterable odeIterable = txGraph.command(query).execute(prepared.bind(params));
+		return DBUtil.backendIterableVtoIsraIteratorV(odeIterable);
+	}
+	/**
+	 * Prepared version of directQueryExpectVoid.
+	 */
+	public void preparedQueryExpectVoid(String commandSql, Object... params) {
+		ParameterizedStatement prepared = ParameterizedStatement.of(commandSql);
+		txGraph.command(new OCommandSQL(prepared.getSql())).execute(prepared.bind(params));
+	}
+
+	/**
+	 * Raw entry of a manual index, key and the rid it points to.
+	 */
+	public static class IndexEntry {
+		public final Object key;
+		public final String rid;
+
+		IndexEntry(Object key, String rid) {
+			this.key = key;
+			this.rid = rid;
+		}
+	}
+	/**
+	 * Prepared query against a manual index, 'SELECT key, rid FROM INDEX:name ...', returns the entries without loading the vertexes.
+	 */
+	public ArrayList<IndexEntry> preparedQueryExpectIndexEntry(String querySql, Object... params) {
+		ParameterizedStatement prepared = ParameterizedStatement.of(querySql);
+		txGraph.makeActive();
+		List<ODocument> docs = txGraph.getRawGraph().query(new OSQLSynchQuery<ODocument>(prepared.getSql()), prepared.bind(params));
+		ArrayList<IndexEntry> result = new ArrayList<IndexEntry>(docs.size());
+		for (ODocument doc : docs) {
+			OIdentifiable rid = doc.field("rid");
+			result.add(new IndexEntry(doc.field("key"), rid.getIdentity().toString()));
+		}
+		return result;
+	}
+	/**
+	 * Wrap rid string for binding it as prepared statement parameter.
+	 */
+	public static Object rid(String rid) {
+		return new ORecordId(rid);
+	}
+
 	/**
 	 * Make a direct SQL query to the database and expect nothing in return.
 	 * @param queryCommand Full SQL command.
@@ -129,6 +297,26 @@ public class Graph {
 		txGraph.command(new OCommandSQL(queryCommand)).execute();
 	}
 
+	/**
+	 * Put multiple entries into a manual index through the index API directly, equivalent of many
+	 * 'INSERT INTO INDEX:indexName (key, rid) VALUES (key, rid)' but without building and parsing SQL for each of them.
+	 * Joins the current transaction, thus all of them are committed together by the caller.
+	 * @param keys Key must match the index key type, eg Integer for integer index, Double for double index.
+	 * @param rids Index matched with keys.
+	 */
+	public void putIndexEntries(String indexName, ArrayList<?> keys, ArrayList<String> rids) {
+		if (keys.size() != rids.size())
+			throw new IllegalArgumentException("Key and rid count mismatch, key: " + keys.size() + " rid: " + rids.size());
+		if (keys.isEmpty())
+			return;
+		txGraph.makeActive();
+		OIndex<?> index = txGraph.getRawGraph().getMetadata().getIndexManager().getIndex(indexName);
+		if (index == null)
+			throw new IllegalStateException("Index not found: " + indexName);
+		for (int i=0; i<keys.size(); i++)
+			index.put(keys.get(i), new ORecordId(rids.get(i)));
+	}
+
 	public long countVertexOfClass(String className) {
 		return txGraph.countVertices(className);
 	}
@@ -146,9 +334,11 @@ public class Graph {
 	public boolean finalizeTask(boolean errorMessageSuppress, Logger logger, Credential logCredential) {
 		try {
 			txGraph.commit();
+			signalCommitted();
 			return false;
 		}
 		catch (OConcurrentModificationException e) {
+			discardUncommitted();
 			if (!errorMessageSuppress) {
 				//Only log if user supply us with the logger, this is to allow better modularization.
 				if (logger != null && logCredential != null) {
@@ -167,8 +357,10 @@ public class Graph {
 	public void finalizeTask(Logger logger, Credential logCredential) {
 		try {
 			txGraph.commit();
+			signalCommitted();
 		}
 		catch (OConcurrentModificationException e) {
+			discardUncommitted();
 			throw new IllegalStateException("OConcurrentModificationException during finalizeTask, "
 					+ "thread will be killed. Original Stack Trace:", e);
 		}
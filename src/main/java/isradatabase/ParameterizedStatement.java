@@ -0,0 +1,131 @@
+package isradatabase;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+
+/**
+ * SQL text with '?' positional placeholder where the values (rid, numeric threshold) are bound at execution instead of being
+ * concatenated into the text.
+ * Nothing is parsed nor cached here, the backend command object is single use and parses its text on every execution. What makes
+ * it cheaper is the backend's own statement cache, keyed by the exact text (sized by statement.cacheSize): literal concatenated into
+ * the text makes every call a new key, reparsed from scratch and evicting the others, with placeholder the text stays the same across
+ * calls and hits.
+ * Identifier (class name, index cluster name) cannot be placeholder in the backend, they are still part of the text, but they
+ * are a small fixed set, thus still cache friendly.
+ * What is kept here is the placeholder count of each known text (bounded LRU) for validating the bound parameters, and how many
+ * distinct text had been seen. Distinct text climbing past the backend cache size means some caller is still concatenating values
+ * into its text and the backend cache is thrashing.
+ */
+public final class ParameterizedStatement {
+	private static final int registryCapacity = 512;
+	private static final ConcurrentLinkedHashMap<String, ParameterizedStatement> registry = new ConcurrentLinkedHashMap.Builder<String, ParameterizedStatement>()
+			.maximumWeightedCapacity(registryCapacity)
+			.build();
+	private static final AtomicLong repeatedTextCount = new AtomicLong(0);
+	private static final AtomicLong newTextCount = new AtomicLong(0);
+
+	private final String sql;
+	private final int parameterCount;
+	private final AtomicLong executionCount = new AtomicLong(0);
+
+	private ParameterizedStatement(String sql) {
+		this.sql = sql;
+		this.parameterCount = countPlaceholder(sql);
+	}
+
+	/**
+	 * Get the statement for the given text, register it if it is not known yet.
+	 */
+	public static ParameterizedStatement of(String sql) {
+		ParameterizedStatement result = registry.get(sql);
+		if (result != null) {
+			repeatedTextCount.incrementAndGet();
+			return result;
+		}
+		newTextCount.incrementAndGet();
+		ParameterizedStatement newStatement = new ParameterizedStatement(sql);
+		result = registry.putIfAbsent(sql, newStatement);
+		return result == null ? newStatement : result;
+	}
+
+	/**
+	 * Count '?' outside of quoted string literal.
+	 */
+	private static int countPlaceholder(String sql) {
+		int count = 0;
+		char quote = 0;
+		for (int i=0; i<sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			}
+			else if (c == '\'' || c == '"')
+				quote = c;
+			else if (c == '?')
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Check the given parameters against the placeholders before handing it to the backend, mismatch there only surface as
+	 * obscure parse error or silently wrong result.
+	 */
+	Object[] bind(Object[] params) {
+		int given = params == null ? 0 : params.length;
+		if (given != parameterCount)
+			throw new IllegalArgumentException("Statement expects " + parameterCount + " parameter but given " + given + ". Statement: " + sql);
+		executionCount.incrementAndGet();
+		return params == null ? new Object[0] : params;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public int getParameterCount() {
+		return parameterCount;
+	}
+
+	public long getExecutionCount() {
+		return executionCount.get();
+	}
+
+	/**
+	 * @return Number of execution whose text had been seen before (still within the registry).
+	 */
+	public static long getRepeatedTextCount() {
+		return repeatedTextCount.get();
+	}
+
+	/**
+	 * @return Number of execution with a text not seen before, a steadily climbing count means concatenated values.
+	 */
+	public static long getNewTextCount() {
+		return newTextCount.get();
+	}
+
+	public static int getDistinctTextCount() {
+		return registry.size();
+	}
+
+	/**
+	 * @return Number of parsed statement the backend keeps, keyed by text.
+	 */
+	public static int getBackendStatementCacheSize() {
+		return OGlobalConfiguration.STATEMENT_CACHE_SIZE.getValueAsInteger();
+	}
+
+	/**
+	 * Human readable statistic summary, for logging.
+	 */
+	public static String getStatistic() {
+		int distinct = registry.size();
+		int backendCacheSize = getBackendStatementCacheSize();
+		return "distinct statement text: " + distinct + ", repeated text: " + repeatedTextCount.get() + ", new text: " + newTextCount.get()
+				+ ", backend statement cache size: " + backendCacheSize + (distinct > backendCacheSize ? " (exceeded, backend cache is thrashing)" : "");
+	}
+}
@@ -0,0 +1,120 @@
+package isradatabase;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In process notification of vertex class (task queue) changes, fed by Graph's commit hook. Every successful commit that added vertex
+ * into a class bumps that class's version and wakes up whoever is waiting on it, so workers can block until work arrives instead of
+ * polling the DB in a tight loop.
+ * DB is still the source of truth, signal only says 'something might be there now'. It only sees commits made within this JVM,
+ * SQL inserts and other processes are invisible to it, thus every waiter must keep a fallback poll interval for recovery.
+ * In multi node setup sharing a remote DB, work of the other nodes only arrives through that fallback poll, thus it bounds the cross
+ * node latency and should be kept within one GCA frame.
+ */
+public abstract class QueueSignal {
+	private static class Signal {
+		private volatile long version = 0;
+
+		synchronized void signal() {
+			version++;
+			notifyAll();
+		}
+
+		synchronized boolean await(long seenVersion, long timeoutMilli) {
+			long deadline = System.currentTimeMillis() + timeoutMilli;
+			long remaining = timeoutMilli;
+			while (version == seenVersion && remaining > 0) {
+				try {
+					wait(remaining);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return version != seenVersion;
+		}
+	}
+	private static final ConcurrentHashMap<String, Signal> signals = new ConcurrentHashMap<String, Signal>();
+
+	private static Signal get(String className) {
+		Signal signal = signals.get(className);
+		if (signal == null) {
+			Signal newSignal = new Signal();
+			signal = signals.putIfAbsent(className, newSignal);
+			if (signal == null)
+				signal = newSignal;
+		}
+		return signal;
+	}
+
+	/**
+	 * Mark the class as changed and wake up all of its waiters.
+	 */
+	public static void signal(String className) {
+		get(className).signal();
+	}
+
+	/**
+	 * Current version of the class, read it BEFORE checking the DB, then pass it to await so commits that land between the check
+	 * and the wait are not missed.
+	 */
+	public static long getVersion(String className) {
+		return get(className).version;
+	}
+
+	/**
+	 * Block until the class had been signaled since the given version, or the timeout (fallback poll interval) elapsed.
+	 * @return True if signaled, false if timed out (or interrupted).
+	 */
+	public static boolean await(String className, long seenVersion, long timeoutMilli) {
+		return get(className).await(seenVersion, timeoutMilli);
+	}
+
+	/**
+	 * For loops that cannot block (serve multiple role per iteration), tells whether a queue is worth querying now.
+	 * After a query found the queue empty, further query are skipped until the queue is signaled or the fallback interval elapsed.
+	 * NOTE: Not thread safe, each polling thread should own its watcher.
+	 */
+	public static class Watcher {
+		private final String className;
+		private final long fallbackMilli;
+		private long checkVersion = 0;
+		private boolean idle = false;
+		private long idleVersion = 0;
+		private long idleSince = 0;
+
+		public Watcher(String className, long fallbackMilli) {
+			this.className = className;
+			this.fallbackMilli = fallbackMilli;
+		}
+
+		/**
+		 * @return True if the queue should be queried now.
+		 */
+		public boolean shouldCheck() {
+			long version = getVersion(className);
+			if (idle && version == idleVersion && System.currentTimeMillis() - idleSince < fallbackMilli)
+				return false;
+			checkVersion = version;
+			return true;
+		}
+
+		/**
+		 * Report the last check found nothing, it will not be checked again until signaled or fallback elapsed.
+		 */
+		public void markEmpty() {
+			idle = true;
+			idleVersion = checkVersion;
+			idleSince = System.currentTimeMillis();
+		}
+
+		/**
+		 * Report the last check found work, keep checking on every iteration.
+		 */
+		public void markBusy() {
+			idle = false;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package isradatabase;
+
+/**
+ * Compact RID, cluster id and cluster position packed into a single long (cluster at the upper 16 bits, position at the lower 48 bits).
+ * Equality, hashing and ordering are plain long operations, no string building on Vertex.getRid() nor char by char compare, thus this is
+ * the form to use for RID held in set/map or compared within loop. String form is only produced on toString, for query and logging.
+ * Packed order is cluster first then position, same as the backend's own RID ordering.
+ * Only persistent RID can be packed, temporary (negative) RID of uncommitted record is rejected with IllegalArgumentException.
+ */
+public final class Rid implements Comparable<Rid> {
+	public static final int maxClusterId = 0x7FFF;
+	public static final long maxClusterPosition = 0xFFFFFFFFFFFFl;
+	private static final long positionMask = 0xFFFFFFFFFFFFl;
+
+	private final long packed;
+
+	private Rid(long packed) {
+		this.packed = packed;
+	}
+
+	public static Rid of(int clusterId, long clusterPosition) {
+		if (clusterId < 0 || clusterId > maxClusterId || clusterPosition < 0 || clusterPosition > maxClusterPosition)
+			throw new IllegalArgumentException("RID out of packable range: #" + clusterId + ":" + clusterPosition);
+		return new Rid(((long)clusterId << 48) | clusterPosition);
+	}
+
+	/**
+	 * Parse the string form, eg #123:5123.
+	 */
+	public static Rid parse(String rid) {
+		return new Rid(pack(rid));
+	}
+
+	/**
+	 * Rebuild from the value given by toLong.
+	 */
+	public static Rid fromLong(long packed) {
+		if (packed < 0)
+			throw new IllegalArgumentException("Invalid packed RID: " + packed);
+		return new Rid(packed);
+	}
+
+	/**
+	 * Pack the string form straight into long without creating the object, eg #123:5123 returns (123 << 48) | 5123.
+	 * Parsed by hand as this is used in comparison heavy loop.
+	 */
+	public static long pack(String rid) {
+		int colon = rid.indexOf(':');
+		if (rid.isEmpty() || rid.charAt(0) != '#' || colon < 2 || colon == rid.length() - 1)
+			throw new IllegalArgumentException("Invalid RID: " + rid);
+		long cluster = 0;
+		for (int i=1; i<colon; i++) {
+			char c = rid.charAt(i);
+			if (c < '0' || c > '9')
+				throw new IllegalArgumentException("Invalid RID: " + rid);
+			cluster = cluster * 10 + (c - '0');
+			if (cluster > maxClusterId)
+				throw new IllegalArgumentException("RID out of packable range: " + rid);
+		}
+		long position = 0;
+		for (int i=colon + 1; i<rid.length(); i++) {
+			char c = rid.charAt(i);
+			if (c < '0' || c > '9')
+				throw new IllegalArgumentException("Invalid RID: " + rid);
+			position = position * 10 + (c - '0');
+			if (position > maxClusterPosition)
+				throw new IllegalArgumentException("RID out of packable range: " + rid);
+		}
+		return (cluster << 48) | position;
+	}
+
+	public int getClusterId() {
+		return (int)(packed >>> 48);
+	}
+
+	public long getClusterPosition() {
+		return packed & positionMask;
+	}
+
+	public long toLong() {
+		return packed;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Rid && ((Rid)obj).packed == packed;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(packed);
+	}
+
+	@Override
+	public int compareTo(Rid other) {
+		return Long.compare(packed, other.packed);
+	}
+
+	/**
+	 * The same string form as Vertex.getRid(), eg #123:5123.
+	 */
+	@Override
+	public String toString() {
+		return "#" + getClusterId() + ":" + getClusterPosition();
+	}
+}
@@ -27,6 +27,22 @@ public class Vertex {
 	public <T> T getProperty(LP linkProperty) {
 		return ov.getProperty(linkProperty.toString());
 	}
+	/**
+	 * Typed getters, accept any numeric storage type (int property stored by older code are widened), no boxing cast at caller.
+	 * Throws IllegalStateException if the property doesn't exist.
+	 */
+	public long getLongProperty(LP linkProperty) {
+		return requireProperty(linkProperty).longValue();
+	}
+	public double getDoubleProperty(LP linkProperty) {
+		return requireProperty(linkProperty).doubleValue();
+	}
+	private Number requireProperty(LP linkProperty) {
+		Number value = ov.getProperty(linkProperty.toString());
+		if (value == null)
+			throw new IllegalStateException("Property " + linkProperty + " doesn't exist on vertex " + this);
+		return value;
+	}
 	public void setProperty(LP linkProperty, Object property) {
 		ov.setProperty(linkProperty.toString(), property);
 	}
@@ -60,6 +76,13 @@ public class Vertex {
 	public String getRid() {
 		return ov.getIdentity().toString();
 	}
+	/**
+	 * Compact form of getRid, read straight from the identity's cluster id and position, no string built.
+	 * Use this for RID compared or stored in set/map. Throws IllegalArgumentException if the vertex is not committed yet (temporary RID).
+	 */
+	public Rid getRidValue() {
+		return Rid.of(ov.getIdentity().getClusterId(), ov.getIdentity().getClusterPosition());
+	}
 
 	@Override
     public String toString() {
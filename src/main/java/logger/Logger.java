@@ -1,8 +1,10 @@
 package logger;
 
-import java.util.ArrayList;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import com.google.common.base.Throwables;
 
@@ -11,7 +13,6 @@ import isradatabase.Vertex;
 import linkProperty.LinkProperty.LP;
 import startup.StartupSoft;
 import stm.DBCN;
-import utilities.Util;
 
 /**
  * Custom logger class that forward logs to DB and to STDOUT.
@@ -19,8 +20,19 @@ import utilities.Util;
 		Thread thread = new Thread(this);
 		thread.start();
 	in order to start the service loop.
+ * log() only copies the arguments into a preallocated slot of a ring buffer, nothing is allocated or formatted on the caller's
+ * thread. The single drainer (run()) prints, stringify exception and writes them to DB in batch, off the caller's hot path.
+ * Entry below minLevel are rejected before anything else, use isLoggable() to skip building expensive message altogether.
+ * If the ring is full (drainer far behind or DB offline), entry below ERROR are dropped and counted, ERROR and above wait for space
+ * up to errorWaitNanos, and only while a drainer is running and the server is ready (before that nothing is consumed), then dropped too.
  */
 public class Logger implements Runnable {
+	public static final int defaultRingCapacity = 8192;
+	//Drainer sleep when there is nothing to do.
+	private static final long idleParkNanos = 1000000l;
+	//Longest an ERROR or above entry is held waiting for room in a full ring before it is dropped.
+	private static final long errorWaitNanos = 1000000000l;
+
 	public int commitCount;
 	public long waitMilliBeforeCommit;
 	public Graph txGraph;
@@ -29,8 +41,28 @@ public class Logger implements Runnable {
 	public AtomicBoolean halt;
 	public AtomicBoolean haltFlushComplete;
 	public AtomicBoolean verbose;
-	public ConcurrentLinkedQueue <LogData> logPool;
 	public long lastTime;
+	//Entry with level lower than this are discarded at log(). Set from StartUpSoftConfig's logMinLevel.
+	private volatile int minLevel = LVL.INFO;
+
+	//Ring buffer. Sequence are claimed by producer from 'cursor', slot is published once its sequence field is set to the claimed value.
+	//'printed' and 'consumed' are drainer's progress, slot are reusable once consumed (written to DB).
+	private final LogEntry[] ring;
+	private final int ringMask;
+	private final AtomicLong cursor = new AtomicLong(0);
+	private volatile long consumed = 0;
+	private long printed = 0;
+	private volatile boolean draining = false;
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	private long reportedDroppedCount = 0;
+
+	//Drainer owned formatter, timestamp has second resolution so the text is reused until the second changes.
+	private final SimpleDateFormat timestampFormat = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+	private long cachedTimestampSecond = Long.MIN_VALUE;
+	private String cachedTimestamp = null;
+	private final StringBuilder lineBuilder = new StringBuilder(256);
+	private final StringBuilder feedbackBuilder = new StringBuilder(4096);
+	private static final Credential nullCredential = new Credential(null, null, null, null);
 
 	public static class Credential {
 		public final String UID;
@@ -75,6 +107,26 @@ public class Logger implements Runnable {
 		public static final int WARN = 3;
 		public static final int ERROR = 4;
 		public static final int FATAL = 5;
+
+		/**
+		 * Level by its name, eg 'DEBUG', case insensitive. For reading level from config file.
+		 */
+		public static int parse(String name) {
+			String upper = name.trim().toUpperCase();
+			if (upper.equals("TRACE"))
+				return TRACE;
+			else if (upper.equals("DEBUG"))
+				return DEBUG;
+			else if (upper.equals("INFO"))
+				return INFO;
+			else if (upper.equals("WARN"))
+				return WARN;
+			else if (upper.equals("ERROR"))
+				return ERROR;
+			else if (upper.equals("FATAL"))
+				return FATAL;
+			throw new IllegalArgumentException("Unknown log level: " + name + ", expecting TRACE, DEBUG, INFO, WARN, ERROR or FATAL.");
+		}
 	}
 
 	/**
@@ -125,27 +177,19 @@ public class Logger implements Runnable {
 	}
 
 	/**
-	 * Store log message and states.
+	 * Reusable ring slot. Written by one producer before publish, read and cleared by the drainer before release.
 	 */
-	private static class LogData {
-		public Credential credential;
-		public int lvl;
-		public int cla;
-		public String message;
-		public Throwable t;
-
-		public LogData(Credential credential, int lvl, int cla, String message, Throwable t) {
-			if (credential == null)
-				this.credential = new Credential(null, null, null, null);
-			if (message == null)
-				message = "null";
-			//Throwable doesn't have to check as if it is null, means we doens't want to use it.
-			this.credential = credential;
-			this.lvl = lvl;
-			this.cla = cla;
-			this.message = message;
-			this.t = t;
-		}
+	private static final class LogEntry {
+		volatile long sequence = -1;
+		Credential credential;
+		int lvl;
+		int cla;
+		String message;
+		Throwable t;
+		long timestamp;
+		//Filled by the drainer, stringified once for both console and DB.
+		String stackTrace;
+		String line;
 	}
 
 	/**
@@ -153,16 +197,47 @@ public class Logger implements Runnable {
 	 * @param commitCount
 	 */
 	public Logger(int commitCount, long waitMilliBeforeCommit, String consoleFeedbackAddr) {
+		this(commitCount, waitMilliBeforeCommit, consoleFeedbackAddr, defaultRingCapacity);
+	}
+
+	/**
+	 * @param ringCapacity Max entries waiting to be written to DB, must be power of 2.
+	 */
+	public Logger(int commitCount, long waitMilliBeforeCommit, String consoleFeedbackAddr, int ringCapacity) {
+		if (ringCapacity <= 0 || Integer.bitCount(ringCapacity) != 1)
+			throw new IllegalArgumentException("Ring capacity must be power of 2, given: " + ringCapacity);
 		this.commitCount = commitCount;
 		this.waitMilliBeforeCommit = waitMilliBeforeCommit;
 		this.consoleFeedbackAddr = consoleFeedbackAddr;
 		this.lastTime = -1l;
 		this.txGraph = null;
-		this.logPool = new ConcurrentLinkedQueue <LogData>();
 		this.serverReady = new AtomicBoolean(false);
 		this.halt = new AtomicBoolean(false);
 		this.haltFlushComplete = new AtomicBoolean(false);
 		this.verbose = new AtomicBoolean(true);
+		this.ring = new LogEntry[ringCapacity];
+		for (int i=0; i<ringCapacity; i++)
+			ring[i] = new LogEntry();
+		this.ringMask = ringCapacity - 1;
+	}
+
+	public void setMinLevel(int lvl) {
+		minLevel = lvl;
+	}
+
+	public int getMinLevel() {
+		return minLevel;
+	}
+
+	/**
+	 * Check before building costly message (eg per element trace), it would be discarded anyway.
+	 */
+	public boolean isLoggable(int lvl) {
+		return lvl >= minLevel;
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
 	}
 
 	/**
@@ -173,113 +248,181 @@ public class Logger implements Runnable {
 	 * @param message
 	 */
 	public void log(Credential credential, int lvl, int cla, String message) {
-		this.logPool.offer(new LogData(credential, lvl , cla, message, null) );
+		log(credential, lvl, cla, message, null);
 	}
 	public void log(Credential credential, int lvl, int cla, String message, Throwable t) {
-		this.logPool.offer(new LogData(credential, lvl , cla, message, t) );
+		if (lvl < minLevel)
+			return;
+		long sequence = claim(lvl);
+		if (sequence == -1l) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+		LogEntry entry = ring[(int) (sequence & ringMask)];
+		entry.credential = credential == null ? nullCredential : credential;
+		entry.lvl = lvl;
+		entry.cla = cla;
+		entry.message = message == null ? "null" : message;
+		//Throwable doesn't have to check as if it is null, means we doens't want to use it.
+		entry.t = t;
+		entry.timestamp = System.currentTimeMillis();
+		//Publish.
+		entry.sequence = sequence;
+	}
+
+	/**
+	 * Claim the next free sequence.
+	 * @return -1 if the ring is full and the entry should be dropped.
+	 */
+	private long claim(int lvl) {
+		long waitStart = -1l;
+		while (true) {
+			long sequence = cursor.get();
+			if (sequence - consumed >= ring.length) {
+				//Important entry wait for the drainer to make room, only if there is a drainer that is writing to DB, for a limited time.
+				if (lvl >= LVL.ERROR && draining && serverReady.get() && !halt.get()) {
+					long now = System.nanoTime();
+					if (waitStart == -1l)
+						waitStart = now;
+					if (now - waitStart < errorWaitNanos) {
+						Thread.yield();
+						continue;
+					}
+				}
+				return -1l;
+			}
+			if (cursor.compareAndSet(sequence, sequence + 1))
+				return sequence;
+		}
+	}
+
+	private String formatTimestamp(long milli) {
+		long second = milli / 1000l;
+		if (second != cachedTimestampSecond) {
+			cachedTimestampSecond = second;
+			cachedTimestamp = timestampFormat.format(new Date(milli));
+		}
+		return cachedTimestamp;
+	}
+
+	/**
+	 * Format and print every published entry not yet printed.
+	 * @return Number of entry newly printed.
+	 */
+	private int printPublished() {
+		int count = 0;
+		while (printed - consumed < ring.length) {
+			LogEntry entry = ring[(int) (printed & ringMask)];
+			if (entry.sequence != printed)
+				break;
+			if (entry.t != null)
+				entry.stackTrace = Throwables.getStackTraceAsString(entry.t);
+			//For user we output the identifier as it is more readable.
+			lineBuilder.setLength(0);
+			lineBuilder.append(formatTimestamp(entry.timestamp)).append(' ').append(entry.credential.identifier).append(' ')
+				.append(entry.lvl).append(' ').append(entry.cla).append(' ').append(entry.message);
+			if (entry.stackTrace != null)
+				lineBuilder.append(entry.stackTrace);
+			entry.line = lineBuilder.toString();
+			if (verbose.get())
+				System.out.println(entry.line);
+			printed++;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Write all printed entry into DB in one transaction, then release their slot.
+	 * Console feedback is written as one vertex per batch instead of one per entry, the console prints its data as it is.
+	 */
+	private void writeToDB() {
+		if (printed == consumed)
+			return;
+		txGraph = StartupSoft.factory.getTx();
+		txGraph.begin();
+		feedbackBuilder.setLength(0);
+		for (long sequence = consumed; sequence < printed; sequence++) {
+			LogEntry entry = ring[(int) (sequence & ringMask)];
+			//For record purposes store the uuid as it leads to the credential, to avoid duplication across logs.
+			Vertex logVertex = txGraph.addVertex(DBCN.V.log.cn, DBCN.V.log.cn);
+			logVertex.setProperty(LPLOG.credentialUid, entry.credential.UID);
+			logVertex.setProperty(LPLOG.LVL, entry.lvl);
+			logVertex.setProperty(LPLOG.CLA, entry.cla);
+			logVertex.setProperty(LPLOG.message, entry.message);
+			logVertex.setProperty(LPLOG.timeStamp, entry.timestamp);
+			if (entry.stackTrace != null)
+				logVertex.setProperty(LPLOG.exception, entry.stackTrace);
+
+			//Convert it to readable format so user can just view it without having to decode and rearrange it.
+			if (feedbackBuilder.length() > 0)
+				feedbackBuilder.append('\n');
+			feedbackBuilder.append(entry.line);
+		}
+		Vertex feedBackVertex = txGraph.addVertex(consoleFeedbackAddr, consoleFeedbackAddr);
+		feedBackVertex.setProperty(LP.data, feedbackBuilder.toString());
+		txGraph.commit();
+		txGraph.shutdown();
+		release(printed);
+	}
+
+	/**
+	 * Clear the slot up to the given sequence (exclusive) and hand them back to producers.
+	 */
+	private void release(long until) {
+		for (long sequence = consumed; sequence < until; sequence++) {
+			LogEntry entry = ring[(int) (sequence & ringMask)];
+			entry.credential = null;
+			entry.message = null;
+			entry.t = null;
+			entry.stackTrace = null;
+			entry.line = null;
+		}
+		consumed = until;
 	}
 
 	@Override
 	public void run() {
-		//Spawn a new thread and periodically commit data to database.
-		ArrayList<LogData> polledLog = new ArrayList<LogData>();
+		draining = true;
+		try {
+			drain();
+		}
+		finally {
+			//Halted or died (eg DB commit failed), either way no one will make room anymore, producer must not wait for it,
+			//and halt must not wait for a flush that will never come.
+			draining = false;
+			haltFlushComplete.set(true);
+		}
+	}
+
+	private void drain() {
 		while (!halt.get()) {
 			long currentTime = System.currentTimeMillis();
 			if (lastTime == -1l)
 				lastTime = currentTime;
 
-			//Fetch data until the queue is empty OR called to halt.
-			while (!halt.get()) {
-				LogData ld = logPool.poll();
-				if (ld != null) {
-					polledLog.add(ld);
-					if (verbose.get()) {
-						//For user we output the identifier as it is more readable.
-						if (ld.t == null)
-							System.out.println(Util.epochMilliToReadable( System.currentTimeMillis() ) + " " + ld.credential.identifier + " "
-									+ ld.lvl + " "  + ld.cla + " " + ld.message);
-						else
-							System.out.println(Util.epochMilliToReadable( System.currentTimeMillis() ) + " " + ld.credential.identifier + " "
-									+ ld.lvl + " "  + ld.cla + " " + ld.message + Throwables.getStackTraceAsString(ld.t));
-					}
-				}
-				else
-					break;
-			}
-
-			//If it is a normal halt, flush all data and exit.
-			if (halt.get() && serverReady.get()) {
-				txGraph = StartupSoft.factory.getTx();
-				txGraph.begin();
-				for (LogData ld : polledLog) {
-					//For record purposes store the uuid as it leads to the credential, to avoid duplication across logs.
-					Vertex logVertex = txGraph.addVertex(DBCN.V.log.cn, DBCN.V.log.cn);
-					logVertex.setProperty(LPLOG.credentialUid, ld.credential.UID);
-					logVertex.setProperty(LPLOG.LVL, ld.lvl);
-					logVertex.setProperty(LPLOG.CLA, ld.cla);
-					logVertex.setProperty(LPLOG.message, ld.message);
-					logVertex.setProperty(LPLOG.timeStamp, currentTime);
-
-					Vertex feedBackVertex = txGraph.addVertex(consoleFeedbackAddr, consoleFeedbackAddr);
-
-					if (ld.t != null) {
-						logVertex.setProperty(LPLOG.exception, Throwables.getStackTraceAsString(ld.t));
-					}
+			int newlyPrinted = printPublished();
 
-					//Convert it to readable format so user can just view it without having to decode and rearrange it.
-					if (ld.t == null)
-						feedBackVertex.setProperty(LP.data, Util.epochMilliToReadable( System.currentTimeMillis() ) + " " + ld.credential.identifier + " "
-								+ ld.lvl + " "  + ld.cla + " " + ld.message);
-					else
-						feedBackVertex.setProperty(LP.data, Util.epochMilliToReadable( System.currentTimeMillis() ) + " " + ld.credential.identifier + " "
-								+ ld.lvl + " "  + ld.cla + " " + ld.message + Throwables.getStackTraceAsString(ld.t));
-				}
-				txGraph.commit();
-				txGraph.shutdown();
-
-				break;
-			}
-			//If it is halt and the server is not ready yet, means the server crashed, log them to a temporary file as currently cannot
-			//log to server now, it is offline.
-			else if (halt.get() && !serverReady.get()) {
-				//Save the arraylist to file.
-				break;
-			}
 			//If time had reached OR had reached the required number for committing, commit all those data to db.
-			else if ( (currentTime - lastTime > waitMilliBeforeCommit
-					|| polledLog.size() > commitCount ) && serverReady.get()) {
+			if ( (currentTime - lastTime > waitMilliBeforeCommit
+					|| printed - consumed > commitCount ) && serverReady.get()) {
 				lastTime = currentTime;
+				writeToDB();
 
-				txGraph = StartupSoft.factory.getTx();
-				txGraph.begin();
-				for (LogData ld : polledLog) {
-					Vertex logVertex = txGraph.addVertex(DBCN.V.log.cn, DBCN.V.log.cn);
-					logVertex.setProperty(LPLOG.credentialUid, ld.credential.UID);
-					logVertex.setProperty(LPLOG.LVL, ld.lvl);
-					logVertex.setProperty(LPLOG.CLA, ld.cla);
-					logVertex.setProperty(LPLOG.message, ld.message);
-					logVertex.setProperty(LPLOG.timeStamp, currentTime);
-
-					Vertex feedBackVertex = txGraph.addVertex(consoleFeedbackAddr, consoleFeedbackAddr);
-
-					if (ld.t != null) {
-						logVertex.setProperty(LPLOG.exception, Throwables.getStackTraceAsString(ld.t));
-					}
-
-					//Convert it to readable format so user can just view it without having to decode and rearrange it.
-					if (ld.t == null)
-						feedBackVertex.setProperty(LP.data, Util.epochMilliToReadable( System.currentTimeMillis() ) + " " + ld.credential.identifier + " "
-								+ ld.lvl + " "  + ld.cla + " " + ld.message);
-					else
-						feedBackVertex.setProperty(LP.data, Util.epochMilliToReadable( System.currentTimeMillis() ) + " " + ld.credential.identifier + " "
-								+ ld.lvl + " "  + ld.cla + " " + ld.message + Throwables.getStackTraceAsString(ld.t));
+				long dropped = droppedCount.get();
+				if (dropped != reportedDroppedCount) {
+					log(nullCredential, LVL.WARN, CLA.INTERNAL, "Logger ring full, " + (dropped - reportedDroppedCount) + " log entry dropped.");
+					reportedDroppedCount = dropped;
 				}
-				txGraph.commit();
-				txGraph.shutdown();
-
-				polledLog = new ArrayList<LogData>();
 			}
+			else if (newlyPrinted == 0)
+				LockSupport.parkNanos(idleParkNanos);
 		}
-		haltFlushComplete.set(true);
+
+		printPublished();
+		//If it is a normal halt, flush all data and exit.
+		if (serverReady.get())
+			writeToDB();
+		//Else the server is not ready, means the server crashed, currently cannot log to server now, it is offline.
 	}
 }
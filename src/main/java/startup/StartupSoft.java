@@ -172,6 +172,7 @@ public class StartupSoft {
 				logCredential = new Credential(Thread.currentThread().getName(), config.nodeId, "", "");
 
 				logger = new Logger(100, 100l, DBCN.V.consoleFeedback.cn);
+				logger.setMinLevel(LVL.parse(config.logMinLevel));
 				//Start the logger's service loop.
 				Thread thread = new Thread(logger);
 				thread.start();
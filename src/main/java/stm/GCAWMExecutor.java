@@ -1,26 +1,146 @@
 package stm;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import logger.Logger.CLA;
+import logger.Logger.Credential;
+import logger.Logger.LVL;
 import startup.StartupSoft;
-import utilities.Util;
 
 /**
- * Execute update task in serial order with optional frame skipping to ensure the whole GCA system keeps up better with real time.
+ * Execute update task in serial order with frame skipping to ensure the whole GCA system keeps up better with real time.
  * GCA-WM STM update tasks that are database reliant.
  * This updates WM STM, the short term memory which provide data for PaRc, the temporal latest reality.
+ * Tasks run on a fixed pool of long lived worker (1 by default, WM index cluster switching relies on the serial order), queued in
+ * a bounded queue. When the queue is full the oldest queued frame is dropped in favor of the newest one, as the latest reality matters
+ * more than catching up with stale frame. May cause some PaRc to fail.
+ * Every task is tracked by its future, completion and drop are counted by their cause so overload can be told apart from failure.
  */
-public class GCAWMExecutor implements Runnable {
-	private ConcurrentLinkedQueue<Runnable> taskQueue;
-	private int haltIndex;
+public class GCAWMExecutor {
+	//Queue of frame allowed to lag behind before the oldest get dropped, 50 frames = 0.5 sec.
+	public static final int defaultQueueCapacity = 50;
+	private static final int defaultWorkerCount = 1;
+	//Log the overload drop once per this many drop, it happens every frame under sustained overload.
+	private static final long overloadLogInterval = 100;
+
+	private final ThreadPoolExecutor executor;
+	private final int haltIndex;
+	private final Credential logCredential;
+
+	//Metrics.
+	private final AtomicLong submittedCount = new AtomicLong(0);
+	private final AtomicLong completedCount = new AtomicLong(0);
+	private final AtomicLong failedCount = new AtomicLong(0);
+	private final AtomicLong droppedOverloadCount = new AtomicLong(0);
+	private final AtomicLong droppedHaltCount = new AtomicLong(0);
+	private final AtomicLong totalQueueWaitMilli = new AtomicLong(0);
+	private final AtomicLong totalRunMilli = new AtomicLong(0);
+
+	/**
+	 * Task wrapper, records the time it had been queued so we know how far behind real time we are running.
+	 */
+	private class GCAWMTask extends FutureTask<Void> {
+		private final long submitTime = System.currentTimeMillis();
+
+		GCAWMTask(Runnable task) {
+			super(task, null);
+		}
+
+		@Override
+		public void run() {
+			//Halted while still queued, do not touch the DB anymore.
+			if (isHalt()) {
+				droppedHaltCount.incrementAndGet();
+				cancel(false);
+				return;
+			}
+			long startTime = System.currentTimeMillis();
+			totalQueueWaitMilli.addAndGet(startTime - submitTime);
+			super.run();
+			totalRunMilli.addAndGet(System.currentTimeMillis() - startTime);
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled())
+				return;
+			try {
+				get();
+				completedCount.incrementAndGet();
+			}
+			catch (Exception e) {
+				failedCount.incrementAndGet();
+				StartupSoft.logger.log(logCredential, LVL.ERROR, CLA.EXCEPTION, "GCAWMExecutor task failed.", e.getCause());
+			}
+		}
+	}
 
 	public GCAWMExecutor(int haltIndex) {
-		taskQueue = new ConcurrentLinkedQueue<Runnable>();
+		this(haltIndex, defaultWorkerCount, defaultQueueCapacity);
+	}
+
+	public GCAWMExecutor(int haltIndex, int workerCount, int queueCapacity) {
 		this.haltIndex = haltIndex;
+		this.logCredential = new Credential();
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		executor = new ThreadPoolExecutor(workerCount, workerCount, 0l, TimeUnit.MILLISECONDS
+				, new ArrayBlockingQueue<Runnable>(queueCapacity)
+				, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "GCAWMExecutor-" + threadCount.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}
+				, new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						if (executor.isShutdown()) {
+							droppedHaltCount.incrementAndGet();
+							((GCAWMTask) r).cancel(false);
+							return;
+						}
+						//Overload, drop the oldest queued frame to make room for the newest.
+						Runnable oldest = executor.getQueue().poll();
+						if (oldest != null) {
+							((GCAWMTask) oldest).cancel(false);
+							long dropped = droppedOverloadCount.incrementAndGet();
+							if (dropped % overloadLogInterval == 1) {
+								StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL, "GCAWMExecutor overloaded, frame dropped. "
+										+ getStatistic());
+							}
+						}
+						if (!executor.getQueue().offer(r)) {
+							((GCAWMTask) r).cancel(false);
+							droppedOverloadCount.incrementAndGet();
+						}
+					}
+				});
+		executor.prestartAllCoreThreads();
+		StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM, "GCAWMExecutor for GCAMain started. Worker: " + workerCount
+				+ ", queue capacity: " + queueCapacity);
 	}
 
-	public void addTask(Runnable task) {
-		taskQueue.add(task);
+	/**
+	 * Queue the task, never block the GCA frame.
+	 * @return Future of the task, cancelled if it is dropped before being run.
+	 */
+	public Future<?> addTask(Runnable task) {
+		GCAWMTask futureTask = new GCAWMTask(task);
+		submittedCount.incrementAndGet();
+		executor.execute(futureTask);
+		return futureTask;
 	}
 
 	/**
@@ -32,39 +152,50 @@ public class GCAWMExecutor implements Runnable {
 		return StartupSoft.halt.get(haltIndex).get();
 	}
 
-	@Override
-	public void run() {
-		System.out.println("GCAWMExecutor for GCAMain started.");
-
-		int frameSkipIfReached = 50;
-		int maxFrameToSkipPerTask = 200;
-
-		while (!isHalt()) {
-			//Skip frames to keep up with real time. May cause some PaRc to fail.
-			if (taskQueue.size() > frameSkipIfReached) {
-				int neededToBeSkippedFrame = taskQueue.size() - frameSkipIfReached;
-				int canBeSkippedFrame = neededToBeSkippedFrame < maxFrameToSkipPerTask ? neededToBeSkippedFrame : maxFrameToSkipPerTask;
-				for (int i=0; i<canBeSkippedFrame; i++)
-					taskQueue.poll();
-				System.out.println("GCAWMExecutor for GCAMain frame skipped: " + canBeSkippedFrame);
-			}
+	/**
+	 * Stop accepting task, drop whatever still queued and let the running one finish.
+	 */
+	public void shutdown() {
+		List<Runnable> pending = new ArrayList<Runnable>();
+		executor.getQueue().drainTo(pending);
+		executor.shutdown();
+		for (Runnable r : pending) {
+			((GCAWMTask) r).cancel(false);
+			droppedHaltCount.incrementAndGet();
+		}
+		StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM, "GCAWMExecutor for GCAMain halted. " + getStatistic());
+	}
 
-			//Get the next task and run it.
-			Runnable task = taskQueue.poll();
-			if (task != null) {
-				Thread thread = new Thread(task);
-				thread.start();
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
 
-				while (thread.isAlive() && !isHalt())
-					Util.sleep(1);
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
 
-				if (!isHalt())
-					System.out.println("GCAWMExecutor for GCAMain task completed.");
-				else
-					System.out.println("GCAWMExecutor for GCAMain task ignored as instructed to halt.");
-			}
-		}
-		System.out.println("GCAWMExecutor for GCAMain halted.");
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getDroppedOverloadCount() {
+		return droppedOverloadCount.get();
+	}
+
+	public long getDroppedHaltCount() {
+		return droppedHaltCount.get();
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
 	}
 
+	public String getStatistic() {
+		long completed = completedCount.get() + failedCount.get();
+		return "submitted: " + submittedCount.get() + ", completed: " + completedCount.get() + ", failed: " + failedCount.get()
+				+ ", dropped by overload: " + droppedOverloadCount.get() + ", dropped by halt: " + droppedHaltCount.get()
+				+ ", queued: " + executor.getQueue().size()
+				+ ", avg queue wait: " + (completed == 0 ? 0 : totalQueueWaitMilli.get() / completed) + "ms"
+				+ ", avg run: " + (completed == 0 ? 0 : totalRunMilli.get() / completed) + "ms";
+	}
 }
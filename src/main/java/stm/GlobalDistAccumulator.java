@@ -0,0 +1,124 @@
+package stm;
+
+import isradatabase.Graph;
+import isradatabase.Vertex;
+import linkProperty.LinkProperty.LP;
+import startup.StartupSoft;
+import utilities.Util;
+
+/**
+ * In memory running sum of distribution values contributed by addDist within this JVM, drained by STMServer's globalDistUpdate once
+ * per bin. Replaces the one globalDist.in vertex per value way, which costs a write transaction for both the contributor and the
+ * consumer for what is really just a counter.
+ * Only used while a globalDistUpdate consumer is running in this JVM, else contributions still go to DB as globalDist.in vertex
+ * so that the globalDistUpdate running in another process can see them.
+ * When the local consumer stops, whatever it had not drained yet is moved into DB the same way, so it is not lost with it.
+ */
+abstract class GlobalDistAccumulator {
+	static final class Sum {
+		final double sum;
+		final long count;
+		final long errCount;
+
+		Sum(double sum, long count, long errCount) {
+			this.sum = sum;
+			this.count = count;
+			this.errCount = errCount;
+		}
+	}
+
+	private static double sum = 0d;
+	private static long count = 0;
+	private static long errCount = 0;
+	private static volatile boolean localConsumer = false;
+
+	/**
+	 * Fold a committed contribution into the current bin. NaN are counted as error and ignored, same as the DB path.
+	 * @return False if the local consumer had stopped in the meantime (the contribution was committed right as it stopped),
+	 * nothing is folded, caller must write it into DB by itself with writeToDB.
+	 */
+	static synchronized boolean add(double dist) {
+		if (!localConsumer)
+			return false;
+		count++;
+		if (Double.isNaN(dist))
+			errCount++;
+		else
+			sum += dist;
+		return true;
+	}
+
+	/**
+	 * Take everything accumulated since the last drain and reset.
+	 */
+	static synchronized Sum drain() {
+		Sum result = new Sum(sum, count, errCount);
+		sum = 0d;
+		count = 0;
+		errCount = 0;
+		return result;
+	}
+
+	/**
+	 * Set by globalDistUpdate when it starts serving in this JVM, use stopLocalConsumer to stop.
+	 */
+	static synchronized void startLocalConsumer() {
+		localConsumer = true;
+	}
+
+	/**
+	 * Called by globalDistUpdate when it stops serving in this JVM, halted or died. Contributions not drained yet are written into DB
+	 * as globalDist.in vertexes for whichever globalDistUpdate runs next. Safe to call more than once.
+	 */
+	static void stopLocalConsumer() {
+		Sum pending;
+		synchronized (GlobalDistAccumulator.class) {
+			localConsumer = false;
+			pending = drain();
+		}
+		writeToDB(pending.sum, pending.count - pending.errCount);
+	}
+
+	/**
+	 * Write contributions into DB as globalDist.in vertexes within its own transaction. Only their sum is known, thus each of them
+	 * is written as their average, the consumer only ever uses their sum and count. Errors are not written, they would only be
+	 * counted out again by the consumer.
+	 * @param sum Sum of the valid contributions.
+	 * @param validCount Number of valid (non NaN) contributions.
+	 */
+	static void writeToDB(double sum, long validCount) {
+		if (validCount <= 0)
+			return;
+		double average = sum / (double) validCount;
+		Graph txGraph = StartupSoft.factory.getTx();
+		try {
+			//Commit retry model.
+			boolean txError = true;
+			int txRetried = 0;
+			while (txError) {
+				if (txRetried > StartupSoft.dbErrMaxRetryCount) {
+					throw new IllegalStateException("Failed to complete transaction after number of retry:"
+							+ StartupSoft.dbErrMaxRetryCount + " with sleep duration of each:" + StartupSoft.dbErrRetrySleepTime);
+				}
+				else if (txError) {
+					if (txRetried != 0)
+						Util.sleep(StartupSoft.dbErrRetrySleepTime);
+					txRetried++;
+				}
+				txGraph.begin();
+				for (long i=0; i<validCount; i++) {
+					Vertex newDist = txGraph.addVertex(DBCN.V.globalDist.in.cn, DBCN.V.globalDist.in.cn);
+					newDist.setProperty(LP.data, average);
+				}
+				txError = txGraph.finalizeTask(true, StartupSoft.logger, null);
+			}
+		}
+		finally {
+			txGraph.shutdown();
+		}
+	}
+
+	static boolean hasLocalConsumer() {
+		return localConsumer;
+	}
+}
@@ -7,6 +7,7 @@ import crawler.CRAWLERTASK;
 import crawler.Crawler;
 import isradatabase.Direction;
 import isradatabase.Graph;
+import isradatabase.QueueSignal;
 import isradatabase.Vertex;
 import linkProperty.LinkProperty.LP;
 import startup.StartupSoft;
@@ -164,6 +165,22 @@ public abstract class STMClient {
 		return null;
 	}
 
+	/**
+	 * Blocking version of getNextCrawlerTask, if the directory is empty, wait until a task is committed into it (signaled by
+	 * QueueSignal) or the maxWaitMilli elapsed, then check once more. maxWaitMilli serves as the fallback poll interval for tasks
+	 * committed by other process which cannot signal us.
+	 * @return The first actual task vertex in the worker's task directory. Null if it is still empty after waiting.
+	 */
+	public static Vertex getNextCrawlerTask(String storageId, Graph txGraph, long maxWaitMilli) {
+		//Read version before checking to not miss task committed in between the check and the wait.
+		long signalVersion = QueueSignal.getVersion(storageId);
+		Vertex task = getNextCrawlerTask(storageId, txGraph);
+		if (task != null)
+			return task;
+		QueueSignal.await(storageId, signalVersion, maxWaitMilli);
+		return getNextCrawlerTask(storageId, txGraph);
+	}
+
 	/**
 	 * Get any next task vertex stored in this worker's task directory.
 	 * @param storageId All worker regardless of their origin, all uses the same work storage semantic to get their work.
@@ -199,11 +216,60 @@ public abstract class STMClient {
 		return null;
 	}
 
+	/*
+	 * In memory snapshot of globalDist.out, it is one of the most frequently read value (every crawler task and every action) while it only
+	 * changes once every few GCA frames. Snapshot is tagged with the QueueSignal version of globalDist.out class, which is bumped whenever
+	 * globalDistUpdate within this JVM publishes a new value (or a transaction added a new globalDist.out vertex), thus a newer publish
+	 * invalidates it immediately.
+	 * Publish made by other process is invisible to the signal, so the snapshot also expires after globalDistSnapshotFallbackMilli,
+	 * which is exactly the globalDistUpdate interval (5 GCA frames), so at worst we are one update behind.
+	 */
+	private static final class GlobalDistSnapshot {
+		final long version;
+		final long fetchTime;
+		final double value;
+
+		GlobalDistSnapshot(long version, long fetchTime, double value) {
+			this.version = version;
+			this.fetchTime = fetchTime;
+			this.value = value;
+		}
+	}
+	private static volatile GlobalDistSnapshot globalDistSnapshot = null;
+	private static final long globalDistSnapshotFallbackMilli = StartupSoft.milliPerGCAFrame * 5;
+
 	/**
-	 * Fetch from STM for real time update, and returns the result.
+	 * Returns the latest global distribution value, served from the in memory snapshot unless a newer value had been published.
 	 * @return Latest global distribution value.
 	 */
 	public static double getGlobalDist(Graph txGraph) {
+		//Read the version BEFORE fetching, so a publish landing during the fetch will invalidate what we are going to store.
+		long version = QueueSignal.getVersion(DBCN.V.globalDist.out.cn);
+		GlobalDistSnapshot snapshot = globalDistSnapshot;
+		if (snapshot != null && snapshot.version == version
+				&& System.currentTimeMillis() - snapshot.fetchTime < globalDistSnapshotFallbackMilli)
+			return snapshot.value;
+
+		double result = fetchGlobalDist(txGraph);
+		globalDistSnapshot = new GlobalDistSnapshot(version, System.currentTimeMillis(), result);
+		return result;
+	}
+
+	/**
+	 * Called by globalDistUpdate after the globalDist.out vertex had been updated and committed, so readers within this JVM get the new value
+	 * without going to the DB at all.
+	 */
+	public static void publishGlobalDist(double globalDist) {
+		//The vertex is updated in place, no vertex added thus Graph will not signal it for us.
+		QueueSignal.signal(DBCN.V.globalDist.out.cn);
+		globalDistSnapshot = new GlobalDistSnapshot(QueueSignal.getVersion(DBCN.V.globalDist.out.cn), System.currentTimeMillis()
+				, globalDist);
+	}
+
+	/**
+	 * Fetch from STM for real time update, and returns the result.
+	 */
+	private static double fetchGlobalDist(Graph txGraph) {
 		double result = 0;
 		boolean success = false;
 		int retry = 0;
@@ -241,9 +307,24 @@ public abstract class STMClient {
 	 * weight according to each type of data.
 	 * @param dist Distribution value calculated by crawler.
 	 * @param className The datatype of the distribution value, for statistical purpose only.
+	 * NOTE: Takes effect only when the caller's transaction commits.
 	 */
-	public static void addDist(double dist, String className, Graph txGraph) {
-		//Create a new vertex storing our data in the database specified by the global STM management authority.
+	public static void addDist(final double dist, String className, Graph txGraph) {
+		//If globalDistUpdate is running within this JVM, fold it into its in memory running sum once our transaction is committed,
+		//no DB write at all.
+		if (GlobalDistAccumulator.hasLocalConsumer()) {
+			txGraph.addCommitHook(new Runnable() {
+				@Override
+				public void run() {
+					//Consumer stopped right as we commit, our transaction is already done, write it on our own.
+					if (!GlobalDistAccumulator.add(dist) && !Double.isNaN(dist))
+						GlobalDistAccumulator.writeToDB(dist, 1);
+				}
+			});
+			return;
+		}
+
+		//Else create a new vertex storing our data in the database specified by the global STM management authority.
 		Vertex newDist = txGraph.addVertex(DBCN.V.globalDist.in.cn, DBCN.V.globalDist.in.cn);
 		newDist.setProperty(LP.data, dist);
 	}
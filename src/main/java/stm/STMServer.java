@@ -13,8 +13,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Iterator;
 import java.util.Scanner;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -31,6 +30,9 @@ import crawler.CRAWLERTASK;
 import crawler.CRAWLER_TASK_ASSIGNMENT;
 import isradatabase.Direction;
 import isradatabase.Graph;
+import isradatabase.ParameterizedStatement;
+import isradatabase.QueueSignal;
+import isradatabase.Rid;
 import isradatabase.Vertex;
 import linkProperty.LinkProperty.LP;
 import logger.Logger.CLA;
@@ -38,7 +40,9 @@ import logger.Logger.Credential;
 import logger.Logger.LVL;
 import pointerchange.POInterchange;
 import startup.StartupSoft;
+import utilities.FrameClock;
 import utilities.Util;
+import wm.RealityWindow;
 import ymlDefine.YmlDefine.ExternalIOConfig;
 import ymlDefine.YmlDefine.TaskDetail;
 import ymlDefine.YmlDefine.WorkerConfig;
@@ -62,9 +66,24 @@ public class STMServer implements Runnable {
 	public static final long GCAPerFrameMilli = 10;
 	private static final long GCAPrematureFinalizeMilli = GCAPerFrameMilli / 5;		//May commit 20% earlier.
 
+	//Maximum number of crawler tasks to be assigned within one transaction by crawlerTaskAssign.
+	private static final int crawlerTaskAssignBatchSize = 100;
+	//crawlerTaskAssign throughput is accumulated across passes and reported once per this interval, not per pass, as every log entry is a DB write.
+	private static final long crawlerTaskAssignReportMilli = 10000;
+	private long crawlerTaskAssignReportLastMilli = System.currentTimeMillis();
+	private long crawlerTaskAssignedCount = 0;
+	private long crawlerTaskAssignTxCount = 0;
+	private long crawlerTaskAssignNano = 0;
+
+	//Queue found empty will not be queried again until a task is committed into it within this process (QueueSignal), or this fallback
+	//interval had elapsed. QueueSignal cannot see commits of other node sharing the remote DB, their tasks are only found by this poll,
+	//thus it must not exceed one GCA frame, else every cross node hop is delayed by multiple frames.
+	private static final long queueFallbackPollMilli = StartupSoft.milliPerGCAFrame;
+
 	//Enable warning message for GCA.
-	private static final boolean GCAFrameSkipWarn = false;
 	private static final boolean GCATimeExceedWarn = false;
+	//GCA frame clock statistic is reported every this many frame if there were new overrun, 1000 frames = 10 sec.
+	private static final long GCAClockReportFrame = 1000;
 
 	//Used by globalDistUpdate for accumulating polyVals and execute them only at particular timing.
 	//Synchronized wait, wait for particular number of frames for the polyVals to accumulate, then process it at once.
@@ -74,7 +93,10 @@ public class STMServer implements Runnable {
 	private static final int framePerPolyValBin = 5;
 	private static final int maxPolyValBinCount = 5;
 	private long polyValLastFrame = -1;
-	private Queue<Double> polyValBin = new LinkedList<Double>();
+	//Ring of the average of each bin, oldest bin is overwritten once it is full.
+	private final double[] polyValBin = new double[maxPolyValBinCount];
+	private int polyValBinHead = 0;
+	private int polyValBinSize = 0;
 
 	//Url to connect to external physical devices.
 	private String visualUrl = "";
@@ -109,6 +131,108 @@ public class STMServer implements Runnable {
 		return false;
 	}
 
+	/**
+	 * Assign a batch of crawler tasks to their workers within a single transaction.
+	 * Crawler expect taskVertex -source> taskDetailVertex (data: taskDetail) -source> actualDataGeneralVertex
+	 * taskVertex created by user will be removed, then create another taskVertex at the selected crawler where he will also remove that
+	 * vertex to treat it as processed, and add to completed storage, remove temporary processing vertex, so we will not forward the task
+	 * to other crawler as the crawler had responded and tell us he had completed.
+	 * On concurrent modification, only the task that caused the conflict is taken out and retried on its own, the rest of the batch
+	 * is recommitted without it. Each removal gives the remaining batch a fresh retry budget, as it is a different transaction now.
+	 * If the batch still run out of retry (conflict that cannot be traced to a task), all of its remaining tasks fall back to be
+	 * assigned one by one, each with its own retry budget same as before batching.
+	 * @param batchTask Task vertexes to be assigned, must not exceed crawlerTaskAssignBatchSize.
+	 * @param batchStorageId Worker storage id for each of the task, index matched with batchTask.
+	 * @return Number of transactions committed or attempted, for throughput reporting.
+	 */
+	private int crawlerTaskAssignBatch(ArrayList<Vertex> batchTask, ArrayList<String> batchStorageId, Graph txGraph) {
+		ArrayList<Vertex> pendingTask = new ArrayList<Vertex>(batchTask);
+		ArrayList<String> pendingStorageId = new ArrayList<String>(batchStorageId);
+		ArrayList<Vertex> conflictTask = new ArrayList<Vertex>();
+		ArrayList<String> conflictStorageId = new ArrayList<String>();
+		int txCount = 0;
+
+		//Commit retry model, only the conflicting subset is excluded and retried separately.
+		int txRetried = 0;
+		boolean rolledBack = false;
+		while (!pendingTask.isEmpty()) {
+			if (txRetried > StartupSoft.dbErrMaxRetryCount) {
+				//Batch keeps failing as a whole, hand every remaining task to the per task path below instead of failing them all.
+				if (pendingTask.size() > 1) {
+					conflictTask.addAll(pendingTask);
+					conflictStorageId.addAll(pendingStorageId);
+					pendingTask.clear();
+					break;
+				}
+				throw new IllegalStateException("Failed to complete transaction after number of retry:"
+						+ StartupSoft.dbErrMaxRetryCount + " with sleep duration of each:" + StartupSoft.dbErrRetrySleepTime);
+			}
+			if (rolledBack) {
+				if (txRetried != 0)
+					Util.sleep(StartupSoft.dbErrRetrySleepTime);
+				pendingTask = Util.vReload(pendingTask, txGraph);
+			}
+
+			txGraph.begin();
+			//Record the rids this transaction touches so we can attribute the conflict to a task.
+			ArrayList<String> touchedTaskRid = new ArrayList<String>(pendingTask.size());
+			ArrayList<String> touchedTaskDetailRid = new ArrayList<String>(pendingTask.size());
+			for (int i=0; i<pendingTask.size(); i++) {
+				Vertex taskVertex = pendingTask.get(i);
+				String storageId = pendingStorageId.get(i);
+				Vertex taskDetailVertex = Util.traverseOnce(taskVertex, Direction.OUT, DBCN.E.source);
+				TaskDetail taskDetail = Util.kryoDeserialize( (byte[])taskDetailVertex.getProperty(LP.data), TaskDetail.class);
+				touchedTaskRid.add(taskVertex.getRid());
+				touchedTaskDetailRid.add(taskDetailVertex.getRid());
+				taskVertex.remove();
+
+				//update to processing state, then remove the original task, meaning that he now have been adopted by a worker.
+				Vertex processingVertex = txGraph.addVertex(taskDetail.processingAddr, taskDetail.processingAddr);
+				processingVertex.addEdge(DBCN.E.source, taskDetailVertex);
+
+				//Set this task to worker by adding a new vertex and edge to the job.
+				Vertex workerNewTask = txGraph.addVertex(storageId, storageId);
+				workerNewTask.addEdge(DBCN.E.source, taskDetailVertex);
+				workerNewTask.addEdge(DBCN.E.processing, processingVertex);
+			}
+
+			txCount++;
+			try {
+				txGraph.commit();
+				pendingTask.clear();
+			}
+			catch (OConcurrentModificationException ocme) {
+				txGraph.rollback();
+				rolledBack = true;
+
+				//Locate the task responsible for the conflict, if it is within this batch, retry it alone later. The rest is a new
+				//transaction without it, thus starts over its retry count immediately, else a large batch under contention would use up
+				//the retry budget of a single task long before it is done.
+				String conflictRid = ocme.getRid().toString();
+				int conflictIndex = touchedTaskRid.indexOf(conflictRid);
+				if (conflictIndex == -1)
+					conflictIndex = touchedTaskDetailRid.indexOf(conflictRid);
+				if (conflictIndex != -1 && pendingTask.size() > 1) {
+					conflictTask.add(pendingTask.remove(conflictIndex));
+					conflictStorageId.add(pendingStorageId.remove(conflictIndex));
+					txRetried = 0;
+				}
+				else
+					txRetried++;
+			}
+		}
+
+		//Conflicting tasks are retried individually so they cannot fail the others again. Reload as their last transaction was rolled back.
+		for (int i=0; i<conflictTask.size(); i++) {
+			ArrayList<Vertex> singleTask = new ArrayList<Vertex>(1);
+			ArrayList<String> singleStorageId = new ArrayList<String>(1);
+			singleTask.add(Util.vReload(conflictTask.get(i), txGraph));
+			singleStorageId.add(conflictStorageId.get(i));
+			txCount += crawlerTaskAssignBatch(singleTask, singleStorageId, txGraph);
+		}
+		return txCount;
+	}
+
 	/**
 	 * Check whether external management system has set us to halt.
 	 * @return Halt or not status.
@@ -131,12 +255,20 @@ public class STMServer implements Runnable {
 		StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM, "STMServer online. Thread name: " + Thread.currentThread().getName()
 				+ "Task are:" + config.preference);
 
-		//Used to store the index of the last frame that the GCA had computed.
-		long curIndexRawDataGCA = -1;
-		long curIndexRawDataICLGCA = -1;
-		long curIndexPOFeedbackGCA = -1;
-		long curIndexexpGCA = -1;
-		long curIndexGCAMainGCA = -1;
+		//Drives the GCA roles, one iteration per GCA frame. Only created if we hold any of the GCA role.
+		FrameClock GCAClock = null;
+		if (checkRole(STMTASK.rawDataGCA) || checkRole(STMTASK.rawDataICLGCA) || checkRole(STMTASK.expGCA) || checkRole(STMTASK.GCAMain))
+			GCAClock = new FrameClock(StartupSoft.milliPerGCAFrame);
+		long GCAClockReportedOverrun = 0;
+
+		//Skip querying task queues that are known to be empty, see QueueSignal.
+		QueueSignal.Watcher rawDataGCAQueue = new QueueSignal.Watcher(DBCN.V.jobCenter.STM.GCAMain.rawData.task.cn, queueFallbackPollMilli);
+		QueueSignal.Watcher rawDataICLGCAQueue = new QueueSignal.Watcher(DBCN.V.jobCenter.STM.GCAMain.rawDataICL.task.cn, queueFallbackPollMilli);
+		QueueSignal.Watcher expGCAQueue = new QueueSignal.Watcher(DBCN.V.jobCenter.STM.GCAMain.exp.task.cn, queueFallbackPollMilli);
+		QueueSignal.Watcher GCAMainQueue = new QueueSignal.Watcher(DBCN.V.jobCenter.STM.GCAMain.task.cn, queueFallbackPollMilli);
+		QueueSignal.Watcher[] crawlerTaskAssignQueue = new QueueSignal.Watcher[CRAWLER_TASK_ASSIGNMENT.taskList.length];
+		for (int i=0; i<crawlerTaskAssignQueue.length; i++)
+			crawlerTaskAssignQueue[i] = new QueueSignal.Watcher(CRAWLER_TASK_ASSIGNMENT.taskList[i], queueFallbackPollMilli);
 
 		Graph txGraph = null;
 		//For consistency, each operation are obligated to finish even if the isHalt() flag is on, but will stop forwarding the task
@@ -161,6 +293,10 @@ public class STMServer implements Runnable {
 			txGraph.loggerSet(StartupSoft.logger, logCredential);
 
 			if (checkRole(STMTASK.globalDistUpdate)) {
+				//Tell addDist within this JVM to contribute into our in memory running sum instead of DB from now on.
+				if (!GlobalDistAccumulator.hasLocalConsumer())
+					GlobalDistAccumulator.startLocalConsumer();
+
 				//Calculate current frame via absolute timing, copied from GCA timing logic below.
 				boolean executeNow = false;
 				long curTime = System.currentTimeMillis();
@@ -173,18 +309,19 @@ public class STMServer implements Runnable {
 				}
 
 				if (executeNow) {
-					//Get all the inputs of global dist.
-					ArrayList<Vertex> allData = txGraph.getVerticesOfClass(DBCN.V.globalDist.in.cn);
-
-					if (allData.isEmpty())
-						continue;
+					//Contributions committed within this JVM had already been summed up as they arrive.
+					GlobalDistAccumulator.Sum localSum = GlobalDistAccumulator.drain();
+					double accumulatedSum = localSum.sum;
+					long totalCount = localSum.count;
+					long errCount = localSum.errCount;
 
-					double accumulatedSum = 0;
-					int totalCount = 0;
-					int errCount = 0;
+					//Contributions from other process (or made before we started) still arrive as globalDist.in vertexes.
+					Iterator<Vertex> allDataItr = txGraph.countVertexOfClass(DBCN.V.globalDist.in.cn) == 0 ? null
+							: txGraph.getVerticesOfClassItr(DBCN.V.globalDist.in.cn);
 
 					double lastTemporaryPolyVal = 0d;
-					for (Vertex dataVertex : allData) {
+					while (allDataItr != null && allDataItr.hasNext()) {
+						Vertex dataVertex = allDataItr.next();
 						totalCount++;
 
 						//Commit retry model.
@@ -244,50 +381,52 @@ public class STMServer implements Runnable {
 						}
 					}
 
-					//Calculate its average and replace the old globalDist data.
-					double currentAverage = accumulatedSum / (double) (totalCount - errCount);
-
-					//The queue had already been init at its declaration statement for once and only once.
-					//If the queue has not reached the max bin count yet, only possible during initial startup, just insert the data into it.
-					if (polyValBin.size() < maxPolyValBinCount)
-						polyValBin.offer(currentAverage);
-					else {
-						//Else we remove the first element and replaces it with new average value at the back.
-						polyValBin.poll();
-						polyValBin.offer(currentAverage);
-					}
+					//Nothing contributed within this bin, keep the current value.
+					if (totalCount - errCount > 0) {
+						//Calculate its average and put it into the bin ring, overwriting the oldest bin once the ring is full.
+						double currentAverage = accumulatedSum / (double) (totalCount - errCount);
+						polyValBin[(polyValBinHead + polyValBinSize) % maxPolyValBinCount] = currentAverage;
+						if (polyValBinSize < maxPolyValBinCount)
+							polyValBinSize++;
+						else
+							polyValBinHead = (polyValBinHead + 1) % maxPolyValBinCount;
 
-					//Calculate the final average of all bin.
-					double finalSum = 0d;
-					for (Double d : polyValBin)
-						finalSum += d.doubleValue();
-					//Divide by polyValBin size instead of the starting size for fairness as it might not had reached the max count yet when
-					//we are trying to calculate it.
-					double finalAverage = finalSum / polyValBin.size();
+						//Calculate the final average of all bin.
+						double finalSum = 0d;
+						for (int i=0; i<polyValBinSize; i++)
+							finalSum += polyValBin[(polyValBinHead + i) % maxPolyValBinCount];
+						//Divide by polyValBin size instead of the starting size for fairness as it might not had reached the max count yet when
+						//we are trying to calculate it.
+						double finalAverage = finalSum / polyValBinSize;
 
-					//Commit retry model.
-					boolean txError2 = true;
-					int txRetried2 = 0;
-					while (txError2) {
-						if (txRetried2 > StartupSoft.dbErrMaxRetryCount) {
-							throw new IllegalStateException("Failed to complete transaction after number of retry:"
-									+ StartupSoft.dbErrMaxRetryCount + " with sleep duration of each:" + StartupSoft.dbErrRetrySleepTime);
-						}
-						else if (txError2) {
-							if (txRetried2 != 0)
-								Util.sleep(StartupSoft.dbErrRetrySleepTime);
-							txRetried2++;
-						}
-						txGraph.begin();
+						//Commit retry model.
+						boolean txError2 = true;
+						int txRetried2 = 0;
+						while (txError2) {
+							if (txRetried2 > StartupSoft.dbErrMaxRetryCount) {
+								throw new IllegalStateException("Failed to complete transaction after number of retry:"
+										+ StartupSoft.dbErrMaxRetryCount + " with sleep duration of each:" + StartupSoft.dbErrRetrySleepTime);
+							}
+							else if (txError2) {
+								if (txRetried2 != 0)
+									Util.sleep(StartupSoft.dbErrRetrySleepTime);
+								txRetried2++;
+							}
+							txGraph.begin();
 
-						Util.removeAllVertexFromClass(DBCN.V.globalDist.out.cn, txGraph);
-						Vertex result = txGraph.addVertex(DBCN.V.globalDist.out.cn, DBCN.V.globalDist.out.cn);
-						result.setProperty(LP.data, finalAverage);
+							//Update the output in place, only create it if it is somehow missing.
+							Vertex result = txGraph.getFirstVertexOfClass(DBCN.V.globalDist.out.cn);
+							if (result == null)
+								result = txGraph.addVertex(DBCN.V.globalDist.out.cn, DBCN.V.globalDist.out.cn);
+							result.setProperty(LP.data, finalAverage);
 
-						txError2 = txGraph.finalizeTask(true);
+							txError2 = txGraph.finalizeTask(true);
+						}
+						//Hand the new value to local readers directly, they no longer need to fetch it from DB.
+						STMClient.publishGlobalDist(finalAverage);
+						StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM,
+								"GlobalDist update:" + finalAverage + "; Contribution count: " + totalCount + "; Errorneous count: " + errCount);
 					}
-					StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM,
-							"GlobalDist update:" + finalAverage + "; Errorneous vertex count: " + errCount);
 				}
 			}
 
@@ -300,11 +439,20 @@ public class STMServer implements Runnable {
 			if (checkRole(STMTASK.crawlerTaskAssign)) {
 				//Switch to next type of task 1 by 1.
 				for (int i=0; i<CRAWLER_TASK_ASSIGNMENT.taskList.length; i++) {
-					//Get all the tasks and workers from particular class.
-					ArrayList<Vertex> taskList = txGraph.getVerticesOfClass(CRAWLER_TASK_ASSIGNMENT.taskList[i]);
-					ArrayList<Vertex> workerList = txGraph.getVerticesOfClass(CRAWLER_TASK_ASSIGNMENT.workerList[i]);
+					if (!crawlerTaskAssignQueue[i].shouldCheck())
+						continue;
+
+					int taskSize = (int) txGraph.countVertexOfClass(CRAWLER_TASK_ASSIGNMENT.taskList[i]);
+					if (taskSize == 0) {
+						crawlerTaskAssignQueue[i].markEmpty();
+						continue;
+					}
+					crawlerTaskAssignQueue[i].markBusy();
 
-					int taskSize = taskList.size();
+					//Get all the tasks and workers from particular class. Tasks are streamed lazily as they may grow into thousands,
+					//only the count is required upfront to distribute them.
+					Iterator<Vertex> taskItr = txGraph.getVerticesOfClassItr(CRAWLER_TASK_ASSIGNMENT.taskList[i]);
+					ArrayList<Vertex> workerList = txGraph.getVerticesOfClass(CRAWLER_TASK_ASSIGNMENT.workerList[i]);
 					int workerSize = workerList.size();
 
 					//Calculate how many task can a worker evenly get and how many is excess.
@@ -331,41 +479,58 @@ public class STMServer implements Runnable {
 						excessTask--;
 					}
 
+					//Pair tasks with their worker then assign them in bounded batches, one transaction per batch instead of one per task.
+					long assignStartNano = System.nanoTime();
 					int assignedTaskCount = 0;
+					int assignTxCount = 0;
+					ArrayList<Vertex> batchTask = new ArrayList<Vertex>(crawlerTaskAssignBatchSize);
+					ArrayList<String> batchStorageId = new ArrayList<String>(crawlerTaskAssignBatchSize);
+
 					//worker's data field is its uid, setup during registration (subscription) to this work.
 					for (int j=0; j<workerSize; j++) {
 						Vertex worker = workerList.get(j);
 						String storageId = worker.getProperty(LP.data);
 
-						//add the task to the corresponding worker's local storage, then set the task state to processing.
 						for (int k=0; k<taskForEachWorker[j]; k++) {
-							//Crawler expect taskVertex -source> taskDetailVertex (data: taskDetail) -source> actualDataGeneralVertex
-							//User input format: create 2 vertex, task and task detail. task contain data field: worker uid.
-							//task detail vertex contain data field: serialized string task detail, edge 'source' from task vertex.
-							//taskVertex created by user will be removed, then create another taskVertex at the selected crawler
-							//where he will also remove that vertex to treat it as processed, and add to completed storage, remove
-							//temporary processing vertex, so we will not forward the task to other crawler as the crawler had
-							//responded and tell us he had completed.
-							txGraph.begin();
-							Vertex taskVertex = taskList.get(assignedTaskCount);
-							Vertex taskDetailVertex = Util.traverseOnce(taskVertex, Direction.OUT, DBCN.E.source);
-							TaskDetail taskDetail = Util.kryoDeserialize( (byte[])taskDetailVertex.getProperty(LP.data), TaskDetail.class);
-							taskVertex.remove();
-
-							//update to processing state, then remove the original task, meaning that he now have been adopted by a worker.
-							Vertex processingVertex = txGraph.addVertex(taskDetail.processingAddr, taskDetail.processingAddr);
-							processingVertex.addEdge(DBCN.E.source, taskDetailVertex);
-
-							//Set this task to worker by adding a new vertex and edge to the job.
-							Vertex workerNewTask = txGraph.addVertex(storageId, storageId);
-							workerNewTask.addEdge(DBCN.E.source, taskDetailVertex);
-							workerNewTask.addEdge(DBCN.E.processing, processingVertex);
+							//Count may be stale against the stream as other may had consumed it concurrently.
+							if (!taskItr.hasNext())
+								break;
+							batchTask.add(taskItr.next());
+							batchStorageId.add(storageId);
+
+							if (batchTask.size() == crawlerTaskAssignBatchSize) {
+								assignTxCount += crawlerTaskAssignBatch(batchTask, batchStorageId, txGraph);
+								assignedTaskCount += batchTask.size();
+								batchTask.clear();
+								batchStorageId.clear();
+							}
+						}
+					}
+					//Flush the remaining partial batch.
+					if (!batchTask.isEmpty()) {
+						assignTxCount += crawlerTaskAssignBatch(batchTask, batchStorageId, txGraph);
+						assignedTaskCount += batchTask.size();
+					}
 
-							assignedTaskCount++;
+					if (assignedTaskCount > 0) {
+						crawlerTaskAssignedCount += assignedTaskCount;
+						crawlerTaskAssignTxCount += assignTxCount;
+						crawlerTaskAssignNano += System.nanoTime() - assignStartNano;
+					}
+				}
 
-							txGraph.finalizeTask();
-						}
+				long now = System.currentTimeMillis();
+				if (now - crawlerTaskAssignReportLastMilli >= crawlerTaskAssignReportMilli) {
+					if (crawlerTaskAssignedCount > 0) {
+						double elapsedMilli = crawlerTaskAssignNano / 1000000d;
+						StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM, "crawlerTaskAssign assigned:" + crawlerTaskAssignedCount
+								+ " tasks in " + crawlerTaskAssignTxCount + " transactions, " + elapsedMilli + "ms within the last "
+								+ (now - crawlerTaskAssignReportLastMilli) + "ms; throughput: " + (crawlerTaskAssignedCount / (elapsedMilli / 1000d)) + " task/s");
 					}
+					crawlerTaskAssignReportLastMilli = now;
+					crawlerTaskAssignedCount = 0;
+					crawlerTaskAssignTxCount = 0;
+					crawlerTaskAssignNano = 0;
 				}
 			}
 
@@ -392,10 +557,12 @@ public class STMServer implements Runnable {
 					new Thread(new Runnable() {
 						@Override
 						public void run() {
+							//Mocked device has no stream to pace us, keep its cadence by clock so fetch time will not add up into drift.
+							FrameClock mockClock = new FrameClock(50l);
 							while (!isHalt()) {
 								if (StartupSoft.mockDevice.get()) {
-									//Mocked sleep time latency, 1000ms / 33ms = 30.3frames. For real application synchronization purposes.
-									Util.sleep(50l);
+									//Mocked sleep time latency, 1000ms / 50ms = 20frames. For real application synchronization purposes.
+									mockClock.awaitNextFrame();
 								}
 
 								Graph txGraph = StartupSoft.factory.getTx();
@@ -476,10 +643,12 @@ public class STMServer implements Runnable {
 					new Thread(new Runnable() {
 						@Override
 						public void run() {
+							//Mocked device has no stream to pace us, keep its cadence by clock so fetch time will not add up into drift.
+							FrameClock mockClock = new FrameClock(100l);
 							while (!isHalt()) {
 								if (StartupSoft.mockDevice.get()) {
 									//Mocked sleep time latency, 1000ms / 10 (44100 / 10 = 4410hz, 100ms) = 10frames. For real application synchronization purposes.
-									Util.sleep(100l);
+									mockClock.awaitNextFrame();
 								}
 
 								Graph txGraph = StartupSoft.factory.getTx();
@@ -584,6 +753,7 @@ public class STMServer implements Runnable {
 					new Thread(new Runnable() {
 						@Override
 						public void run() {
+							FrameClock feedbackClock = new FrameClock(StartupSoft.milliPerGCAFrame);
 							while (!isHalt()) {
 								//TODO: NOTE Ignore rpi for now, uses direct path instead for simpler access.
 								boolean rpiExist = false;
@@ -600,10 +770,9 @@ public class STMServer implements Runnable {
 									throw new IllegalStateException(e);
 								}
 
-								if (StartupSoft.mockDevice.get()) {
-									//Mocked sleep time latency, 1000ms / 10ms = 100frames. For real application synchronization purposes.
-									Util.sleep(10l);
-								}
+								//Feedback is sampled once per GCA frame, mocked or not, 1000ms / 10ms = 100frames. The file based path has nothing
+								//to block on and would otherwise spin.
+								feedbackClock.awaitNextFrame();
 
 								Graph txGraph = StartupSoft.factory.getTx();
 								//Set the logger in order to use shorthand version of finalizeTask().
@@ -798,36 +967,29 @@ public class STMServer implements Runnable {
 			 * Group all latest raw data into a single vertex for future reference.
 			 * Thread Allowed : 1
 			 */
-			if (checkRole(STMTASK.rawDataGCA)) {
-				//Timing logic:  100frames per sec, 10ms per frame, frame index must be greater than us in order to indicate that it is time
-				//to move forward. 0~6ms GCA normal, 6~9ms GCAMain, where the curMs hold this data. 2/3 for processing, 1/3 for finalization.
-				boolean executeNow = false;
-				long curTime = System.currentTimeMillis();
-				long curFrame = curTime / StartupSoft.milliPerGCAFrame;
-				long curMs = curTime % StartupSoft.milliPerGCAFrame;
-				if (curIndexRawDataGCA == -1) {
-					curIndexRawDataGCA = curFrame;
-					executeNow = true;
-				}
-				else if (curFrame >= curIndexRawDataGCA) {
-					if (curFrame - curIndexRawDataGCA > 1 && GCAFrameSkipWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"Frame skipped at GCA by: " + ( curFrame - curIndexRawDataGCA - 1) );
-					if (curMs >= StartupSoft.milliPerGCAFrame * 2 / 3 && GCATimeExceedWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"GCA frame start is time late, current milli: " + curMs);
-
-					curIndexRawDataGCA = curFrame;
-					executeNow = true;
+			//Park until the next GCA frame starts, all GCA role below work on that frame. Overload (frame overrun) are reported periodically.
+			if (GCAClock != null) {
+				GCAClock.awaitNextFrame();
+				if (GCAClock.getFrameCount() % GCAClockReportFrame == 0 && GCAClock.getOverrunCount() > GCAClockReportedOverrun) {
+					GCAClockReportedOverrun = GCAClock.getOverrunCount();
+					StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL, "GCA frame overrun, clock statistic: " + GCAClock.getStatistic());
 				}
+			}
 
-				if (!isHalt() && executeNow) {
+			if (checkRole(STMTASK.rawDataGCA)) {
+				//Runs once per GCA frame, clock is advanced at the top of the GCA section, 0~6ms GCA normal, 6~9ms GCAMain.
+				if (!isHalt()) {
 					//Task vertex is a temporary holding vertex that is created when the source vertex commits themselves to GCA, serves as a record, and he hold
 					//another edge 'source' which links to the actual source's general vertex.
-					ArrayList<Vertex> allTaskVertexArray = txGraph.getVerticesOfClass(DBCN.V.jobCenter.STM.GCAMain.rawData.task.cn);
-					if (allTaskVertexArray.isEmpty()) {
+					//Streamed lazily, task queue may grow into thousands under load, do not copy all of them before any work starts.
+					if (!rawDataGCAQueue.shouldCheck())
+						continue;
+					Iterator<Vertex> allTaskVertexItr = txGraph.getVerticesOfClassItr(DBCN.V.jobCenter.STM.GCAMain.rawData.task.cn);
+					if (!allTaskVertexItr.hasNext()) {
+						rawDataGCAQueue.markEmpty();
 						continue;
 					}
+					rawDataGCAQueue.markBusy();
 
 					//Create 2 new vertex, general and data(group) vertex.
 					txGraph.begin();
@@ -841,6 +1003,11 @@ public class STMServer implements Runnable {
 
 					//Disabled as we now run in one transaction per iteration, no more multiple iteration commit once.
 					if (GCAPrematureCommit) {
+						//Premature commit resume logic requires random access, materialize the queue.
+						ArrayList<Vertex> allTaskVertexArray = new ArrayList<Vertex>();
+						while (allTaskVertexItr.hasNext())
+							allTaskVertexArray.add(allTaskVertexItr.next());
+
 						//Commit retry model with premature commit.
 						int accumulatedCycle = 0;
 						int indexThisRound = 0;
@@ -894,7 +1061,9 @@ public class STMServer implements Runnable {
 					}
 
 					else {
-						for (int i=0; i<allTaskVertexArray.size(); i++) {
+						while (allTaskVertexItr.hasNext()) {
+							Vertex taskVertex = allTaskVertexItr.next();
+
 							//Commit retry model.
 							boolean txError = true;
 							int txRetried = 0;
@@ -912,7 +1081,6 @@ public class STMServer implements Runnable {
 								//Reload it as it is going to be reused again in another transaction.
 								groupVertex = Util.vReload(groupVertex, txGraph);
 
-								Vertex taskVertex = allTaskVertexArray.get(i);
 								Vertex actualDataVertex = Util.traverseOnce(taskVertex, Direction.OUT, DBCN.E.source);
 								String dataVertexClass = actualDataVertex.getCName();
 								//Note that POFeedback should be at its own dedicated GCA.
@@ -954,35 +1122,19 @@ public class STMServer implements Runnable {
 			 * Thread Allowed : 1
 			 */
 			if (checkRole(STMTASK.rawDataICLGCA)) {
-				//Timing logic:  100frames per sec, 10ms per frame, frame index must be greater than us in order to indicate that it is time
-				//to move forward. 0~6ms GCA normal, 6~9ms GCAMain, where the curMs hold this data. 2/3 for processing, 1/3 for finalization.
-				boolean executeNow = false;
-				long curTime = System.currentTimeMillis();
-				long curFrame = curTime / StartupSoft.milliPerGCAFrame;
-				long curMs = curTime % StartupSoft.milliPerGCAFrame;
-				if (curIndexRawDataICLGCA == -1) {
-					curIndexRawDataICLGCA = curFrame;
-					executeNow = true;
-				}
-				else if (curFrame >= curIndexRawDataICLGCA) {
-					if (curFrame - curIndexRawDataICLGCA > 1 && GCAFrameSkipWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"Frame skipped at GCA by: " + ( curFrame - curIndexRawDataICLGCA - 1) );
-					if (curMs >= StartupSoft.milliPerGCAFrame * 2 / 3 && GCATimeExceedWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"GCA frame start is time late, current milli: " + curMs);
-
-					curIndexRawDataICLGCA = curFrame;
-					executeNow = true;
-				}
-
-				if (!isHalt() && executeNow) {
+				//Runs once per GCA frame, clock is advanced at the top of the GCA section, 0~6ms GCA normal, 6~9ms GCAMain.
+				if (!isHalt()) {
 					//Task vertex is a temporary holding vertex that is created when the source vertex commits themselves to GCA, serves as a record, and he hold
 					//another edge 'source' which links to the actual source's general vertex.
-					ArrayList<Vertex> allTaskVertexArray = txGraph.getVerticesOfClass(DBCN.V.jobCenter.STM.GCAMain.rawDataICL.task.cn);
-					if (allTaskVertexArray.isEmpty()) {
+					//Streamed lazily, task queue may grow into thousands under load, do not copy all of them before any work starts.
+					if (!rawDataICLGCAQueue.shouldCheck())
+						continue;
+					Iterator<Vertex> allTaskVertexItr = txGraph.getVerticesOfClassItr(DBCN.V.jobCenter.STM.GCAMain.rawDataICL.task.cn);
+					if (!allTaskVertexItr.hasNext()) {
+						rawDataICLGCAQueue.markEmpty();
 						continue;
 					}
+					rawDataICLGCAQueue.markBusy();
 
 					//Create 2 new vertex, general and data(group) vertex.
 					txGraph.begin();
@@ -996,6 +1148,11 @@ public class STMServer implements Runnable {
 
 					//Disabled as we now run in one transaction per iteration, no more multiple iteration commit once.
 					if (GCAPrematureCommit) {
+						//Premature commit resume logic requires random access, materialize the queue.
+						ArrayList<Vertex> allTaskVertexArray = new ArrayList<Vertex>();
+						while (allTaskVertexItr.hasNext())
+							allTaskVertexArray.add(allTaskVertexItr.next());
+
 						//Commit retry model with premature commit.
 						int accumulatedCycle = 0;
 						int indexThisRound = 0;
@@ -1050,7 +1207,9 @@ public class STMServer implements Runnable {
 					}
 
 					else {
-						for (int i=0; i<allTaskVertexArray.size(); i++) {
+						while (allTaskVertexItr.hasNext()) {
+							Vertex taskVertex = allTaskVertexItr.next();
+
 							//Commit retry model.
 							boolean txError = true;
 							int txRetried = 0;
@@ -1068,7 +1227,6 @@ public class STMServer implements Runnable {
 								//Reload it as it is going to be reused again in another transaction.
 								groupVertex = Util.vReload(groupVertex, txGraph);
 
-								Vertex taskVertex = allTaskVertexArray.get(i);
 								Vertex actualDataVertex = Util.traverseOnce(taskVertex, Direction.OUT, DBCN.E.source);
 								String dataVertexClass = actualDataVertex.getCName();
 								//Note that POFeedback should be at its own dedicated GCA.
@@ -1106,35 +1264,19 @@ public class STMServer implements Runnable {
 			 * Thread Allowed : 1
 			 */
 			if (checkRole(STMTASK.expGCA)) {
-				//Timing logic:  100frames per sec, 10ms per frame, frame index must be greater than us in order to indicate that it is time
-				//to move forward. 0~6ms GCA normal, 6~9ms GCAMain, where the curMs hold this data. 2/3 for processing, 1/3 for finalization.
-				boolean executeNow = false;
-				long curTime = System.currentTimeMillis();
-				long curFrame = curTime / StartupSoft.milliPerGCAFrame;
-				long curMs = curTime % StartupSoft.milliPerGCAFrame;
-				if (curIndexexpGCA == -1) {
-					curIndexexpGCA = curFrame;
-					executeNow = true;
-				}
-				else if (curFrame >= curIndexexpGCA) {
-					if (curFrame - curIndexexpGCA > 1 && GCAFrameSkipWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"Frame skipped at GCA by: " + ( curFrame - curIndexexpGCA - 1) );
-					if (curMs >= StartupSoft.milliPerGCAFrame * 2 / 3 && GCATimeExceedWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"GCA frame start is time late, current milli: " + curMs);
-
-					curIndexexpGCA = curFrame;
-					executeNow = true;
-				}
-
-				if (!isHalt() && executeNow) {
+				//Runs once per GCA frame, clock is advanced at the top of the GCA section, 0~6ms GCA normal, 6~9ms GCAMain.
+				if (!isHalt()) {
 					//Task vertex is a temporary holding vertex that is created when the source vertex commits themselves to GCA, serves as a record, and he hold
 					//another edge 'source' which links to the actual source's general vertex.
-					ArrayList<Vertex> allTaskVertexArray = txGraph.getVerticesOfClass(DBCN.V.jobCenter.STM.GCAMain.exp.task.cn);
-					if (allTaskVertexArray.isEmpty()) {
+					//Streamed lazily, task queue may grow into thousands under load, do not copy all of them before any work starts.
+					if (!expGCAQueue.shouldCheck())
+						continue;
+					Iterator<Vertex> allTaskVertexItr = txGraph.getVerticesOfClassItr(DBCN.V.jobCenter.STM.GCAMain.exp.task.cn);
+					if (!allTaskVertexItr.hasNext()) {
+						expGCAQueue.markEmpty();
 						continue;
 					}
+					expGCAQueue.markBusy();
 
 					//Create 2 new vertex, general and data(group) vertex.
 					txGraph.begin();
@@ -1148,6 +1290,11 @@ public class STMServer implements Runnable {
 
 					//Disabled as we now run in one transaction per iteration, no more multiple iteration commit once.
 					if (GCAPrematureCommit) {
+						//Premature commit resume logic requires random access, materialize the queue.
+						ArrayList<Vertex> allTaskVertexArray = new ArrayList<Vertex>();
+						while (allTaskVertexItr.hasNext())
+							allTaskVertexArray.add(allTaskVertexItr.next());
+
 						//Commit retry model with premature commit.
 						int accumulatedCycle = 0;
 						int indexThisRound = 0;
@@ -1200,7 +1347,9 @@ public class STMServer implements Runnable {
 					}
 
 					else {
-						for (int i=0; i<allTaskVertexArray.size(); i++) {
+						while (allTaskVertexItr.hasNext()) {
+							Vertex taskVertex = allTaskVertexItr.next();
+
 							//Commit retry model.
 							boolean txError = true;
 							int txRetried = 0;
@@ -1218,7 +1367,6 @@ public class STMServer implements Runnable {
 								//Reload it as it is going to be reused again in another transaction.
 								groupVertex = Util.vReload(groupVertex, txGraph);
 
-								Vertex taskVertex = allTaskVertexArray.get(i);
 								Vertex actualDataVertex = Util.traverseOnce(taskVertex, Direction.OUT, DBCN.E.source);
 								String dataVertexClass = actualDataVertex.getCName();
 								if (!dataVertexClass.equals(DBCN.V.general.exp.cn))
@@ -1256,48 +1404,24 @@ public class STMServer implements Runnable {
 			 * Thread Allowed : 1
 			 */
 			if (checkRole(STMTASK.GCAMain)) {
-				//Timing logic:  100frames per sec, 10ms per frame, frame index must be greater than us in order to indicate that it is time
-				//to move forward. 0~6ms GCA normal, 6~9ms GCAMain, where the curMs hold this data. 2/3 for processing, 1/3 for finalization.
-				boolean executeNow = false;
-				long curTime = System.currentTimeMillis();
-				long curFrame = curTime / StartupSoft.milliPerGCAFrame;
-				long curMs = curTime % StartupSoft.milliPerGCAFrame;
-				if (curIndexGCAMainGCA == -1) {
-					curIndexGCAMainGCA = curFrame;
-					executeNow = true;
-				}
-				else if (curFrame >= curIndexGCAMainGCA) {
-					if (curFrame - curIndexGCAMainGCA > 1 && GCAFrameSkipWarn)
-						StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-								"Frame skipped at GCA by: " + ( curFrame - curIndexGCAMainGCA - 1) );
-					//There is no too late for GCAMain, but there is too early.
-					while (curMs <= StartupSoft.milliPerGCAFrame * 2 / 3) {
-						Util.sleep(1l);
-						long newTime = System.currentTimeMillis();
-						long newFrame = newTime / StartupSoft.milliPerGCAFrame;
-						long newCurMs = newTime % StartupSoft.milliPerGCAFrame;
-						//Check whether he overslept by checking if the latter time is earlier than current time, which means that it had
-						//gone to the next frame (overslept) OR it had gone to the next frame.
-						if (newCurMs < curMs || newFrame > curFrame && GCATimeExceedWarn) {
-							curFrame = newFrame;
-							StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
-									"GCAMain overslept by: " + (StartupSoft.milliPerGCAFrame - curMs + newCurMs) + "ms.");
-							break;
-						}
-						else
-							curMs = newCurMs;
-					}
-					curIndexGCAMainGCA = curFrame;
-					executeNow = true;
-				}
+				//0~6ms GCA normal, 6~9ms GCAMain, 2/3 for processing, 1/3 for finalization. There is no too late for GCAMain, but there is too early,
+				//park until the last 1/3 of the current frame.
+				if (!GCAClock.awaitWithinFrame(StartupSoft.milliPerGCAFrame * 2 / 3) && GCATimeExceedWarn)
+					StartupSoft.logger.log(logCredential, LVL.WARN, CLA.INTERNAL,
+							"GCAMain started late, frame " + GCAClock.getCurrentFrame() + " had already ended.");
 
-				if (!isHalt() && executeNow) {
+				if (!isHalt()) {
 					//Task vertex is a temporary holding vertex that is created when the source vertex commits themselves to GCA, serves as a record, and he hold
 					//another edge 'source' which links to the actual source's general vertex.
-					ArrayList<Vertex> allTaskVertexArray = txGraph.getVerticesOfClass(DBCN.V.jobCenter.STM.GCAMain.task.cn);
-					if (allTaskVertexArray.isEmpty()) {
+					//Streamed lazily, task queue may grow into thousands under load, do not copy all of them before any work starts.
+					if (!GCAMainQueue.shouldCheck())
+						continue;
+					Iterator<Vertex> allTaskVertexItr = txGraph.getVerticesOfClassItr(DBCN.V.jobCenter.STM.GCAMain.task.cn);
+					if (!allTaskVertexItr.hasNext()) {
+						GCAMainQueue.markEmpty();
 						continue;
 					}
+					GCAMainQueue.markBusy();
 
 					//Create 2 new vertex, general and data(group) vertex.
 					txGraph.begin();
@@ -1316,6 +1440,11 @@ public class STMServer implements Runnable {
 
 					//Disabled as we now run in one transaction per iteration, no more multiple iteration commit once.
 					if (GCAPrematureCommit) {
+						//Premature commit resume logic requires random access, materialize the queue.
+						ArrayList<Vertex> allTaskVertexArray = new ArrayList<Vertex>();
+						while (allTaskVertexItr.hasNext())
+							allTaskVertexArray.add(allTaskVertexItr.next());
+
 						//Commit retry model with premature commit.
 						int accumulatedCycle = 0;
 						int indexThisRound = 0;
@@ -1369,7 +1498,9 @@ public class STMServer implements Runnable {
 					}
 
 					else {
-						for (int i=0; i<allTaskVertexArray.size(); i++) {
+						while (allTaskVertexItr.hasNext()) {
+							Vertex taskVertex = allTaskVertexItr.next();
+
 							//Commit retry model.
 							boolean txError = true;
 							int txRetried = 0;
@@ -1387,7 +1518,6 @@ public class STMServer implements Runnable {
 								//Reload it as it is going to be reused again in another transaction.
 								groupVertex = Util.vReload(groupVertex, txGraph);
 
-								Vertex taskVertex = allTaskVertexArray.get(i);
 								Vertex actualDataVertex = Util.traverseOnce(taskVertex, Direction.OUT, DBCN.E.source);
 								String dataVertexClass = actualDataVertex.getCName();
 								if (!dataVertexClass.equals(DBCN.V.general.GCAMain.rawData.cn) && !dataVertexClass.equals(DBCN.V.general.GCAMain.rawDataICL.cn)
@@ -1447,7 +1577,7 @@ public class STMServer implements Runnable {
 					//--Begin of GCA import to WM STM logic.
 					/*
 					 * TODO: Convert all these into SQL and run it at the database directly. Current overhead is double of the original
-					 * import and manage. Read 22-9-16.
+					 * import and manage. Read 22-9-16. Index insertion is now batched per frame via the index API, traversal remains.
 					 * Used by WM to record currently valid data in WM STM scope.
 					 * Importation still uses code instead of SQL as it involves type deduction, which cannot be expressed in SQL.
 					 * Update the WM index to add all these GCA elements into the global WM repository where WM's select new attention
@@ -1457,11 +1587,12 @@ public class STMServer implements Runnable {
 					//Setup the background executor thread to process the GCA import to WM STM logics.
 					if (gcaWMExecutor == null) {
 						gcaWMExecutor = new GCAWMExecutor(config.haltIndex);
-						Thread thread = new Thread(gcaWMExecutor);
-						thread.start();
+						//Frames imported below are fed to WM's PaRc window.
+						RealityWindow.setActive(true);
 					}
 
 					final String generalVertexRid = generalVertex.getRid();
+					final long frameNumber = RealityWindow.frameCommitted();
 					//Add the task to executor.
 					gcaWMExecutor.addTask(new Runnable() {
 						@Override
@@ -1486,8 +1617,21 @@ public class STMServer implements Runnable {
 							Util.WMSTMInsertIncrementGCACount(DBCN.index.WMPrecisionRateIndex.cn, txGraph);
 							Util.WMSTMInsertIncrementGCACount(DBCN.index.WMTimeRanIndex.cn, txGraph);
 
+							//Insert cluster is fixed for the whole frame after the increment above, collect all entries of the frame and
+							//write them into their index at once below.
+							ArrayList<Double> precisionRateKey = new ArrayList<Double>();
+							ArrayList<String> precisionRateRid = new ArrayList<String>();
+							ArrayList<Integer> timeRanKey = new ArrayList<Integer>();
+							ArrayList<String> timeRanRid = new ArrayList<String>();
+							//Frame content for WM PaRc window.
+							ArrayList<Rid> memberRids = new ArrayList<Rid>(originalVertexList.size());
+							ArrayList<String> analogClasses = new ArrayList<String>();
+							ArrayList<Rid> analogRids = new ArrayList<Rid>();
+							ArrayList<Double> analogValues = new ArrayList<Double>();
+
 							for (Vertex v : originalVertexList) {
 								String className = v.getCName();
+								memberRids.add(v.getRidValue());
 
 								//Only support exp and LTM, all the other subsidiary stuff will not be allowed to enter the WM stream.
 								if (className.equals(DBCN.V.general.exp.requirement.cn) || className.equals(DBCN.V.general.exp.result.cn)
@@ -1517,10 +1661,8 @@ public class STMServer implements Runnable {
 									 */
 									double precisionRate = expMainGeneral.getProperty(LP.precisionRate);
 
-									//Need to add a trailing 'd' to signify it is double, else it will treat it as float and throw error.
-									txGraph.directQueryExpectVoid("INSERT INTO INDEX:" +
-											Util.WMSTMInsertGetClusterName(DBCN.index.WMPrecisionRateIndex.cn, txGraph) +
-											" (key, rid) VALUES (" + precisionRate + "d, " + v.getRid() + ")");
+									precisionRateKey.add(precisionRate);
+									precisionRateRid.add(v.getRid());
 								}
 								//LTM type general vertexes. Only ANALOG type is allowed, eg motors, analog sensors. AUDIO IS NOT!
 								/*
@@ -1548,11 +1690,26 @@ public class STMServer implements Runnable {
 									 */
 									long timeRanCount = Util.traverse(v, Direction.IN, DBCN.E.occurrence).size();
 
-									txGraph.directQueryExpectVoid("INSERT INTO INDEX:" +
-											Util.WMSTMInsertGetClusterName(DBCN.index.WMTimeRanIndex.cn, txGraph) +
-											" (key, rid) VALUES (" + timeRanCount + ", " + v.getRid() + ")");
+									//Index key type is integer.
+									timeRanKey.add((int) timeRanCount);
+									timeRanRid.add(v.getRid());
+
+									double analogValue = Util.traverseOnce(v, Direction.IN, DBCN.E.data, LTM.MOVEMENT).getProperty(LP.data);
+									analogClasses.add(className);
+									analogRids.add(v.getRidValue());
+									analogValues.add(analogValue);
 								}
 							}
+							RealityWindow.addFrame(frameNumber, generalVertex.getLongProperty(LP.timeStamp), memberRids, analogClasses, analogRids, analogValues);
+
+							//Single transaction for the whole frame, through the index API instead of one SQL insert per vertex.
+							txGraph.begin();
+							txGraph.putIndexEntries(Util.WMSTMInsertGetClusterName(DBCN.index.WMPrecisionRateIndex.cn, txGraph)
+									, precisionRateKey, precisionRateRid);
+							txGraph.putIndexEntries(Util.WMSTMInsertGetClusterName(DBCN.index.WMTimeRanIndex.cn, txGraph)
+									, timeRanKey, timeRanRid);
+							txGraph.finalizeTask();
+							txGraph.shutdown();
 							//--End of GCA import to WM STM logic.
 						}
 					});
@@ -1561,6 +1718,10 @@ public class STMServer implements Runnable {
 				}
 			}
 		}	//isHalt()
+		//Hand the undrained contributions back to DB before accepting the halt, DB may be closed soon after.
+		if (checkRole(STMTASK.globalDistUpdate))
+			GlobalDistAccumulator.stopLocalConsumer();
+		StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM, "STMServer halted. " + ParameterizedStatement.getStatistic());
 		StartupSoft.haltAccepted.set(config.haltIndex, new AtomicBoolean(true));
 	}	//run()
 
@@ -1573,5 +1734,22 @@ public class STMServer implements Runnable {
 		catch(Error | Exception e) {
 			StartupSoft.logger.log(logCredential, LVL.FATAL, CLA.EXCEPTION, "", e);
 		}
+		finally {
+			//Whether halted or died, addDist within this JVM must stop folding into an accumulator nobody drains anymore,
+			//they go back to DB where another globalDistUpdate can pick them up, along with what had not been drained yet.
+			if (checkRole(STMTASK.globalDistUpdate)) {
+				try {
+					GlobalDistAccumulator.stopLocalConsumer();
+				}
+				catch (RuntimeException e) {
+					StartupSoft.logger.log(logCredential, LVL.ERROR, CLA.EXCEPTION, "Failed to flush pending globalDist contributions into DB.", e);
+				}
+			}
+			//Same for GCAMain, a window that is no longer fed would keep answering PaRc with a frozen reality.
+			if (gcaWMExecutor != null) {
+				gcaWMExecutor.shutdown();
+				RealityWindow.setActive(false);
+			}
+		}
 	}
 }
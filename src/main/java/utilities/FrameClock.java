@@ -0,0 +1,185 @@
+package utilities;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed cadence frame clock, frame N spans [N * period, (N+1) * period) of the wall clock (epoch), the same absolute frame index
+ * the GCA timing logic used, so processes on different machines stay on the same frame numbering.
+ * Waiting is deadline based, the next deadline is always computed from the frame index, never from 'now + period', thus time spent
+ * by the caller or oversleeping never accumulates into drift. Caller is parked until shortly before the deadline, then the last
+ * fraction is yielded away for precision, instead of Util.sleep(1) polling.
+ * Time is measured by System.nanoTime (monotonic, fine grained) anchored to System.currentTimeMillis, the anchor is re-measured every
+ * second and slewed by at most a tenth of a frame, so it follows the wall clock (eg NTP adjustment) without frame jumping back and forth.
+ * A caller that arrives after its next frame had already started is an overrun, it is handed the current frame (skipping the missed
+ * ones) and the lateness is recorded in the statistic.
+ * NOTE: Not thread safe, each thread should own its clock. Statistic getters can be called from any thread.
+ */
+public class FrameClock {
+	private final long periodNanos;
+	//Remaining time below this are yielded instead of parked, park may overshoot by scheduler granularity.
+	private static final long spinThresholdNanos = 200000l;
+	private static final long resyncIntervalNanos = 1000000000l;
+	//Anchor difference larger than this is a wall clock jump (manual adjustment), take it at once instead of slewing.
+	private static final long clockJumpNanos = 1000000000l;
+
+	private long epochOffsetNanos;
+	private long lastResyncNanoTime;
+	private long currentFrame = -1;
+
+	//Statistic, written by the owner thread only.
+	private volatile long frameCount = 0;
+	private volatile long overrunCount = 0;
+	private volatile long skippedFrameCount = 0;
+	private volatile long totalOverrunNanos = 0;
+	private volatile long maxOverrunNanos = 0;
+	private volatile long maxWakeLatenessNanos = 0;
+
+	public FrameClock(long milliPerFrame) {
+		if (milliPerFrame <= 0)
+			throw new IllegalArgumentException("Frame period must be positive, given: " + milliPerFrame);
+		periodNanos = milliPerFrame * 1000000l;
+		epochOffsetNanos = System.currentTimeMillis() * 1000000l - System.nanoTime();
+		lastResyncNanoTime = System.nanoTime();
+	}
+
+	private long epochNanos() {
+		return System.nanoTime() + epochOffsetNanos;
+	}
+
+	/**
+	 * Re-measure the anchor against the wall clock. currentTimeMillis only has milli precision, thus small difference are mostly
+	 * noise, correction is capped per resync so it converges over few seconds.
+	 */
+	private void resync() {
+		long nanoTime = System.nanoTime();
+		if (nanoTime - lastResyncNanoTime < resyncIntervalNanos)
+			return;
+		lastResyncNanoTime = nanoTime;
+		long error = (System.currentTimeMillis() * 1000000l - nanoTime) - epochOffsetNanos;
+		if (Math.abs(error) >= clockJumpNanos)
+			epochOffsetNanos += error;
+		else {
+			long maxStep = periodNanos / 10;
+			epochOffsetNanos += Math.max(-maxStep, Math.min(maxStep, error));
+		}
+	}
+
+	private void parkUntil(long deadlineEpochNanos) {
+		while (true) {
+			long remaining = deadlineEpochNanos - epochNanos();
+			if (remaining <= 0 || Thread.currentThread().isInterrupted())
+				return;
+			if (remaining > spinThresholdNanos)
+				LockSupport.parkNanos(remaining - spinThresholdNanos);
+			else
+				Thread.yield();
+		}
+	}
+
+	/**
+	 * Block until the next frame starts. First call returns the current frame immediately.
+	 * If the caller is already late (next frame had started, or even passed), returns at once with the latest frame and count it as overrun.
+	 * @return The frame index that had just started.
+	 */
+	public long awaitNextFrame() {
+		resync();
+		long now = epochNanos();
+		long nowFrame = now / periodNanos;
+		if (currentFrame == -1) {
+			currentFrame = nowFrame;
+			frameCount++;
+			return currentFrame;
+		}
+
+		long targetFrame = currentFrame + 1;
+		long deadline = targetFrame * periodNanos;
+		if (now > deadline) {
+			long overrun = now - deadline;
+			overrunCount++;
+			totalOverrunNanos += overrun;
+			if (overrun > maxOverrunNanos)
+				maxOverrunNanos = overrun;
+			skippedFrameCount += nowFrame - targetFrame;
+			currentFrame = nowFrame;
+		}
+		else {
+			parkUntil(deadline);
+			long wakeLateness = epochNanos() - deadline;
+			if (wakeLateness > maxWakeLatenessNanos)
+				maxWakeLatenessNanos = wakeLateness;
+			currentFrame = targetFrame;
+		}
+		frameCount++;
+		return currentFrame;
+	}
+
+	/**
+	 * Block until the given offset within the current frame, for work that must happen at particular phase of the frame.
+	 * @param offsetMilli Offset from the start of the current frame.
+	 * @return True if reached within the current frame, false if the current frame had already ended (no wait at all).
+	 */
+	public boolean awaitWithinFrame(long offsetMilli) {
+		if (currentFrame == -1)
+			throw new IllegalStateException("Clock not started, call awaitNextFrame first.");
+		if (epochNanos() >= (currentFrame + 1) * periodNanos)
+			return false;
+		parkUntil(currentFrame * periodNanos + offsetMilli * 1000000l);
+		return true;
+	}
+
+	/**
+	 * @return Frame index returned by the last awaitNextFrame, -1 if not started.
+	 */
+	public long getCurrentFrame() {
+		return currentFrame;
+	}
+
+	/**
+	 * @return Number of frame returned by awaitNextFrame, skipped frame excluded.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return Number of time the caller arrived after its next frame had already started.
+	 */
+	public long getOverrunCount() {
+		return overrunCount;
+	}
+
+	/**
+	 * @return Number of frame that had passed entirely without the caller.
+	 */
+	public long getSkippedFrameCount() {
+		return skippedFrameCount;
+	}
+
+	/**
+	 * @return Average lateness of overrun, in milli. 0 if no overrun.
+	 */
+	public double getAverageOverrunMilli() {
+		long overrun = overrunCount;
+		return overrun == 0 ? 0d : (double)totalOverrunNanos / (double)overrun / 1000000d;
+	}
+
+	public double getMaxOverrunMilli() {
+		return (double)maxOverrunNanos / 1000000d;
+	}
+
+	/**
+	 * @return Worst delay between a deadline and the parked caller actually waking up, in milli.
+	 */
+	public double getMaxWakeLatenessMilli() {
+		return (double)maxWakeLatenessNanos / 1000000d;
+	}
+
+	/**
+	 * Human readable statistic summary, for logging.
+	 */
+	public String getStatistic() {
+		return "frame: " + frameCount + ", overrun: " + overrunCount + ", skipped frame: " + skippedFrameCount
+				+ ", avg overrun: " + String.format("%.3f", getAverageOverrunMilli()) + "ms, max overrun: "
+				+ String.format("%.3f", getMaxOverrunMilli()) + "ms, max wake lateness: " + String.format("%.3f", getMaxWakeLatenessMilli()) + "ms";
+	}
+}
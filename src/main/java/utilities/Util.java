@@ -1,7 +1,5 @@
 package utilities;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.PrintWriter;
@@ -13,26 +11,30 @@ import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoFactory;
+import com.esotericsoftware.kryo.pool.KryoPool;
 import com.esotericsoftware.yamlbeans.YamlException;
 import com.esotericsoftware.yamlbeans.YamlReader;
 import com.esotericsoftware.yamlbeans.YamlWriter;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 
 import ICL.ICLPatternType;
 import isradatabase.Direction;
 import isradatabase.Edge;
 import isradatabase.Graph;
+import isradatabase.Rid;
 import isradatabase.Vertex;
 import linkProperty.LinkProperty.LP;
 import stm.DBCN;
 import ymlDefine.YmlDefine.DBCredentialConfig;
+import ymlDefine.YmlDefine.TaskDetail;
 
 /**
  * General purpose static utility class.
@@ -199,7 +201,7 @@ public abstract class Util {
 		ArrayList<Edge> edges = traverseGetEdges(targetVertex, direction, edgeLabel);
 		ArrayList<Long> result = new ArrayList<Long>();
 		for (Edge e : edges)
-			result.add((Long) e.getProperty(LP.startTimeOffset));
+			result.add(e.getLongProperty(LP.startTimeOffset));
 		return result;
 	}
 
@@ -214,6 +216,17 @@ public abstract class Util {
 		return result;
 	}
 
+	/**
+	 * Same as traverseGetRid but in compact Rid form, no string created per vertex.
+	 */
+	public static ArrayList<Rid> traverseGetRidValue (Vertex targetVertex, Direction direction, String edgeLabel) {
+		ArrayList<Vertex> original = Util.traverse(targetVertex, direction, edgeLabel);
+		ArrayList<Rid> result = new ArrayList<Rid>(original.size());
+		for (Vertex v : original)
+			result.add(v.getRidValue());
+		return result;
+	}
+
 	public static String traverseOnceGetRid (Vertex targetVertex, Direction direction, String edgeLabel) {
 		return traverseOnce(targetVertex, direction, edgeLabel).getRid();
 	}
@@ -471,8 +484,8 @@ public abstract class Util {
 				errorCount++;
 			}
 		}
-		long beginningTimeStamp = beginningExpMainGeneral.getProperty(LP.timeStamp);
-		long endTimeStamp = GCAMainGeneral.getProperty(LP.timeStamp);
+		long beginningTimeStamp = beginningExpMainGeneral.getLongProperty(LP.timeStamp);
+		long endTimeStamp = GCAMainGeneral.getLongProperty(LP.timeStamp);
 		return endTimeStamp - beginningTimeStamp;
 	}
 
@@ -548,35 +561,47 @@ public abstract class Util {
 	}
 
 	/**
-	 * Translate string based RID back into real vertex by performing a fetch from DB.
+	 * Translate string based RID back into real vertex by loading them directly from DB by record id.
+	 * Rid that doesn't exist are skipped.
 	 * @param ridList The ridList that contain rid in String form.
 	 * @param txGraph A functional transactional graph that is already connected to the main DB.
-	 * @return A iterable orientVertex fetched from db based on the rid provided.
+	 * @return A list of vertex fetched from db based on the rid provided, in the same order.
 	 */
 	public static ArrayList<Vertex> ridToVertex (ArrayList<String> ridList, Graph txGraph) {
-		StringBuilder serializedRid = new StringBuilder();
-
-		for (int i=0; i < ridList.size(); i++) {
-			serializedRid.append(ridList.get(i));
-			//stop adding "," comma if it is the last element.
-			if ( i+1 != ridList.size())
-				serializedRid.append(",");
-		}
-
-		//example format: SELECT FROM  [#3:0,#3:1]
-		return txGraph.directQueryExpectVertex("SELECT FROM [" + serializedRid.toString() + "]");
+		return txGraph.getVerticesByRid(ridList);
 	}
 
 	/**
-	 * Translate string based RID back into real vertex by performing a fetch from DB.
+	 * Translate string based RID back into real vertex by loading it directly from DB by record id.
 	 * One rid only.
-	 * @param ridList The ridList that contain rid in String form.
+	 * @param rid The rid in String form.
 	 * @param txGraph A functional transactional graph that is already connected to the main DB.
-	 * @return A iterable orientVertex fetched from db based on the rid provided.
+	 * @return The vertex fetched from db based on the rid provided. Throws IndexOutOfBoundsException if it doesn't exist.
 	 */
 	public static Vertex ridToVertex (String rid, Graph txGraph) {
-		//example format: SELECT FROM  [#3:0,#3:1]
-		return txGraph.directQueryExpectVertex("SELECT FROM [" + rid + "]").get(0);
+		Vertex result = txGraph.getVertexByRid(rid);
+		//Same exception the old 'SELECT FROM [rid]'.get(0) gave, keep it for callers expecting that.
+		if (result == null)
+			throw new IndexOutOfBoundsException("Vertex doesn't exist, rid: " + rid);
+		return result;
+	}
+
+	/**
+	 * Compact Rid version of ridToVertex, loaded by cluster id and position without going through the string form.
+	 * Throws IndexOutOfBoundsException if it doesn't exist.
+	 */
+	public static Vertex ridToVertex (Rid rid, Graph txGraph) {
+		Vertex result = txGraph.getVertexByRid(rid);
+		if (result == null)
+			throw new IndexOutOfBoundsException("Vertex doesn't exist, rid: " + rid);
+		return result;
+	}
+
+	/**
+	 * Compact Rid version of the list ridToVertex, named differently as generic list overload cannot be told apart.
+	 */
+	public static ArrayList<Vertex> ridValueToVertex (List<Rid> ridList, Graph txGraph) {
+		return txGraph.getVerticesByRidValue(ridList);
 	}
 
 	/**
@@ -700,42 +725,167 @@ public abstract class Util {
 	}
 
 	/**
-	 * Input an array list of primitive type only, sort it and return a list containing original index instead of scores.
+	 * Input an array list of numbers, sort it and return a list containing original index instead of scores.
+	 * Sort is stable, equal elements keep their original order in both ascending and descending.
+	 * Integral elements (Long, Integer...) are compared exactly as long, anything else as double, NaN last in both order.
 	 * Return empty list if given array is empty.
 	 * @param ascending True then ascending, false descending.
 	 */
-	public static <T> ArrayList<Integer> sortGetIndex(ArrayList<T> arr, boolean ascending) {
-		Multimap<T, Integer> sort = HashMultimap.create();
-		for (int i=0; i<arr.size(); i++) {
-			T t = arr.get(i);
-			sort.put(t, i);
+	public static <T extends Number> ArrayList<Integer> sortGetIndex(ArrayList<T> arr, boolean ascending) {
+		int size = arr.size();
+		boolean integral = true;
+		for (int i=0; i<size && integral; i++) {
+			Number n = arr.get(i);
+			integral = n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
 		}
 
-		ArrayList<Integer> result = new ArrayList<Integer>();
-
-		//If nothing is available just return an empty list.
-		if (arr.isEmpty())
-			return result;
+		int[] sortedIndex;
+		if (integral) {
+			long[] keys = new long[size];
+			for (int i=0; i<size; i++) {
+				long key = arr.get(i).longValue();
+				//Bitwise not reverses the order without the overflow negation has at Long.MIN_VALUE.
+				keys[i] = ascending ? key : ~key;
+			}
+			sortedIndex = sortGetIndex(keys);
+		}
+		else {
+			double[] keys = new double[size];
+			for (int i=0; i<size; i++) {
+				double key = arr.get(i).doubleValue();
+				keys[i] = ascending ? key : -key;
+			}
+			sortedIndex = sortGetIndex(keys);
+		}
 
-		result.addAll( sort.values() );
+		ArrayList<Integer> result = new ArrayList<Integer>(size);
+		for (int index : sortedIndex)
+			result.add(index);
+		return result;
+	}
 
-		if (!ascending)
-			Collections.reverse(result);
+	/**
+	 * Stable ascending argsort of primitive keys, result[p] is the original index of the element at sorted position p, equal keys keep
+	 * their original order.
+	 */
+	public static int[] sortGetIndex(double[] keys) {
+		int[] index = new int[keys.length];
+		for (int i=0; i<index.length; i++)
+			index[i] = i;
+		mergeSortIndex(index, new int[index.length], 0, index.length, keys);
+		return index;
+	}
+	public static int[] sortGetIndex(long[] keys) {
+		int[] index = new int[keys.length];
+		for (int i=0; i<index.length; i++)
+			index[i] = i;
+		mergeSortIndex(index, new int[index.length], 0, index.length, keys);
+		return index;
+	}
 
-		return result;
+	/**
+	 * Inverse of sortGetIndex, result[i] is the position element i ends up at after a stable ascending sort.
+	 * Use this instead of sortGetIndex(..).indexOf(i) in a loop, which is quadratic.
+	 */
+	public static int[] sortGetRank(double[] keys) {
+		return indexToRank(sortGetIndex(keys));
+	}
+	public static int[] sortGetRank(long[] keys) {
+		return indexToRank(sortGetIndex(keys));
+	}
+
+	private static int[] indexToRank(int[] sortedIndex) {
+		int[] rank = new int[sortedIndex.length];
+		for (int p=0; p<sortedIndex.length; p++)
+			rank[sortedIndex[p]] = p;
+		return rank;
+	}
+
+	//Merge sort is stable, Arrays.sort on primitive is not and cannot carry the index along.
+	private static void mergeSortIndex(int[] index, int[] buffer, int from, int to, double[] keys) {
+		if (to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		mergeSortIndex(index, buffer, from, mid, keys);
+		mergeSortIndex(index, buffer, mid, to, keys);
+		if (Double.compare(keys[index[mid - 1]], keys[index[mid]]) <= 0)
+			return;
+		System.arraycopy(index, from, buffer, from, to - from);
+		int left = from, right = mid;
+		for (int k=from; k<to; k++) {
+			if (right >= to || (left < mid && Double.compare(keys[buffer[left]], keys[buffer[right]]) <= 0))
+				index[k] = buffer[left++];
+			else
+				index[k] = buffer[right++];
+		}
+	}
+	private static void mergeSortIndex(int[] index, int[] buffer, int from, int to, long[] keys) {
+		if (to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		mergeSortIndex(index, buffer, from, mid, keys);
+		mergeSortIndex(index, buffer, mid, to, keys);
+		if (keys[index[mid - 1]] <= keys[index[mid]])
+			return;
+		System.arraycopy(index, from, buffer, from, to - from);
+		int left = from, right = mid;
+		for (int k=from; k<to; k++) {
+			if (right >= to || (left < mid && keys[buffer[left]] <= keys[buffer[right]]))
+				index[k] = buffer[left++];
+			else
+				index[k] = buffer[right++];
+		}
 	}
 
+	/*
+	 * Kryo instances are expensive to build and not thread safe, thus they are pooled and reused along with their registered classes.
+	 * Registration order must be identical across all nodes as the registered id is written into the serialized bytes, only append new
+	 * class at the end. Registration is not required, unregistered class will still be written by name as before.
+	 */
+	private static final KryoPool kryoPool = new KryoPool.Builder(new KryoFactory() {
+		@Override
+		public Kryo create() {
+			Kryo kryo = new Kryo();
+			kryo.register(TaskDetail.class);
+			kryo.register(ArrayList.class);
+			kryo.register(LinkedList.class);
+			kryo.register(HashMap.class);
+			kryo.register(String[].class);
+			kryo.register(double[].class);
+			kryo.register(int[].class);
+			kryo.register(long[].class);
+			return kryo;
+		}
+	}).softReferences().build();
+	//Per thread reusable buffer, grows as needed and never shrink, -1 means no upper bound.
+	private static final ThreadLocal<Output> kryoOutput = new ThreadLocal<Output>() {
+		@Override
+		protected Output initialValue() {
+			return new Output(1024, -1);
+		}
+	};
+	private static final byte[] kryoEmptyBuffer = new byte[0];
+	private static final ThreadLocal<Input> kryoInput = new ThreadLocal<Input>() {
+		@Override
+		protected Input initialValue() {
+			return new Input();
+		}
+	};
+
 	/**
 	 * Serialize any object into binary without caring its type.
 	 */
 	public static byte[] kryoSerialize (Object obj) {
-		Kryo kryo = new Kryo();
-		Output output = new Output(new ByteArrayOutputStream());
-		kryo.writeObject(output, obj);
-		byte[] byteOutput = output.toBytes();
-		output.close();
-
-		return byteOutput;
+		Kryo kryo = kryoPool.borrow();
+		Output output = kryoOutput.get();
+		try {
+			output.clear();
+			kryo.writeObject(output, obj);
+			return output.toBytes();
+		}
+		finally {
+			kryoPool.release(kryo);
+		}
 	}
 
 	/**
@@ -745,12 +895,18 @@ public abstract class Util {
 	 * @return
 	 */
 	public static <T> T kryoDeserialize (byte[] byteArrInput, Class<?> classType) {
-		Kryo kryo = new Kryo();
-		Input input;
-		input = new Input(new ByteArrayInputStream(byteArrInput));
-		Object result = kryo.readObject(input, classType);
-		input.close();
-		return (T)result;
+		Kryo kryo = kryoPool.borrow();
+		Input input = kryoInput.get();
+		try {
+			input.setBuffer(byteArrInput);
+			Object result = kryo.readObject(input, classType);
+			return (T)result;
+		}
+		finally {
+			//Drop the reference so large buffer can be garbage collected.
+			input.setBuffer(kryoEmptyBuffer);
+			kryoPool.release(kryo);
+		}
 	}
 
 	/**
@@ -864,6 +1020,9 @@ public abstract class Util {
 	public static Vertex vReload(String rid, Graph txGraph) {
 		return Util.ridToVertex(rid, txGraph);
 	}
+	public static Vertex vReload(Rid rid, Graph txGraph) {
+		return Util.ridToVertex(rid, txGraph);
+	}
 	public static Vertex vReload(Vertex targetVertex, Graph txGraph) {
 		return Util.ridToVertex(targetVertex.getRid(), txGraph);
 	}
@@ -885,6 +1044,15 @@ public abstract class Util {
 		return Integer.parseInt( rid.substring( rid.indexOf(":") + 1, rid.length()) );
 	}
 
+	/**
+	 * Pack the RID into a long, cluster id at the upper 16 bits and cluster position at the lower 48 bits, eg #123:5123 returns
+	 * (123 << 48) | 5123. Same RID always give the same long and different RID never collide, for set/compare without string.
+	 * Same packing as Rid, see Rid.pack. Temporary (negative) RID of uncommitted record is rejected.
+	 */
+	public static long ridToLong(String rid) {
+		return Rid.pack(rid);
+	}
+
 	/**
 	 * Extract class initial from the RID. eg #123:5123 returns #123:
 	 * @param rid
@@ -908,10 +1076,17 @@ public abstract class Util {
 		return true;
 	}
 
+	//SimpleDateFormat is not thread safe and costly to construct, one per thread reused.
+	private static final ThreadLocal<java.text.SimpleDateFormat> readableDateFormat = new ThreadLocal<java.text.SimpleDateFormat>() {
+		@Override
+		protected java.text.SimpleDateFormat initialValue() {
+			return new java.text.SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+		}
+	};
 	public static String epochMilliToReadable(long currentMilli) {
 		//http://www.epochconverter.com/
 		//Without the *1000 as we are already milli sec, not sec.
-		return new java.text.SimpleDateFormat("MM/dd/yyyy HH:mm:ss").format(new java.util.Date (currentMilli));
+		return readableDateFormat.get().format(new java.util.Date (currentMilli));
 	}
 
 	/**
@@ -933,16 +1108,18 @@ public abstract class Util {
 	 * @return Will never return the sentinel value -1, if they are -1 and no other timeRan data available, we will return 0.
 	 */
 	public static long timeRanCountFromExpMainGeneral(Vertex expMainGeneral) {
-		//OccurrencePR sentinel value is -1, if they are -1 means they are not processed yet by PaRc, thus we skip them directly.
+		//String form, siblings may be created within the current transaction (temporary RID) which Rid cannot hold, and the
+		//IllegalArgumentException it throws would be mistaken for the no parent signal below.
 		String givenExpMainGeneralRid = expMainGeneral.getRid();
-		long occurrenceCountPR = expMainGeneral.getProperty(LP.occurrenceCountPR);
+		//OccurrencePR sentinel value is -1, if they are -1 means they are not processed yet by PaRc, thus we skip them directly.
+		long occurrenceCountPR = expMainGeneral.getLongProperty(LP.occurrenceCountPR);
 		long timeRan = occurrenceCountPR == -1l ? 0l : occurrenceCountPR;
 		try {
 			Vertex parent = Util.traverseOnce(expMainGeneral, Direction.OUT, DBCN.E.occurrence);
 			if (!parent.getCName().equals(DBCN.V.general.exp.cn))
 				throw new IllegalStateException("Invalid type: " + parent.getCName());
 
-			long parentOccurrenceCountPR = parent.getProperty(LP.occurrenceCountPR);
+			long parentOccurrenceCountPR = parent.getLongProperty(LP.occurrenceCountPR);
 			timeRan += parentOccurrenceCountPR == -1l ? 0l : parentOccurrenceCountPR;
 
 			//This sibling list will include our original vertex, thus we must skip it.
@@ -953,7 +1130,7 @@ public abstract class Util {
 					throw new IllegalStateException("Invalid type: " + parent.getCName());
 				if (givenExpMainGeneralRid.equals(v.getRid()))
 					continue;
-				long siblingOccurrenceCountPR = v.getProperty(LP.occurrenceCountPR);
+				long siblingOccurrenceCountPR = v.getLongProperty(LP.occurrenceCountPR);
 				timeRan += siblingOccurrenceCountPR == -1l ? 0l : siblingOccurrenceCountPR;
 			}
 		}
@@ -966,7 +1143,7 @@ public abstract class Util {
 			for (Vertex v : children) {
 				if (!v.getCName().equals(DBCN.V.general.exp.cn))
 					throw new IllegalStateException("Invalid type: " + v.getCName());
-				long childrenOccurrenceCountPR = v.getProperty(LP.occurrenceCountPR);
+				long childrenOccurrenceCountPR = v.getLongProperty(LP.occurrenceCountPR);
 				timeRan += childrenOccurrenceCountPR == -1l ? 0l : childrenOccurrenceCountPR;
 			}
 		}
@@ -0,0 +1,199 @@
+package wm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import isradatabase.Rid;
+
+/**
+ * In memory sliding index of the latest GCAMain frames (the 'reality' WM can see), fed by STMServer's GCA-WM import once a frame's
+ * content is known.
+ * Maps each element RID of a frame to the frame it last appeared in, and LTM analog (movement) value to the latest element holding it,
+ * so PaRc (checkRidExistInReality) can answer with a hash lookup instead of rescanning the latest frames in DB on every check.
+ * Keyed by compact Rid, hashing and equality are on a single long instead of the RID string.
+ *
+ * Frames are numbered by GCAMain as they are committed (frameCommitted), not as they are fed. The import runs behind GCAMain and
+ * may drop frames under overload (GCAWMExecutor), thus the fed frames alone may reach further back than the DB's last
+ * totalGCAFrameAllowedInMemory frames. Every answer is therefore taken against the latest committed frame number, the same range
+ * the DB route sees, frames older than its boundary are evicted, and whatever the window cannot tell for sure because of a
+ * missing (dropped or not yet fed) frame is answered as unknown.
+ * Only authoritative for what it had been fed. Unknown rid (fed late, frame dropped, or no feeder running in this JVM) must fall back
+ * to the DB route, thus callers treat null as 'don't know' and not as 'not in reality'.
+ */
+public abstract class RealityWindow {
+	private static final class Frame {
+		final long frameNumber;
+		final long timestamp;
+		final ArrayList<Rid> memberRids;
+		final ArrayList<String> analogClasses;
+		final ArrayList<Double> analogValues;
+
+		Frame(long frameNumber, long timestamp, ArrayList<Rid> memberRids, ArrayList<String> analogClasses, ArrayList<Double> analogValues) {
+			this.frameNumber = frameNumber;
+			this.timestamp = timestamp;
+			this.memberRids = memberRids;
+			this.analogClasses = analogClasses;
+			this.analogValues = analogValues;
+		}
+	}
+
+	private static final class AnalogEntry {
+		final Rid rid;
+		final long frameNumber;
+
+		AnalogEntry(Rid rid, long frameNumber) {
+			this.rid = rid;
+			this.frameNumber = frameNumber;
+		}
+	}
+
+	private static final ArrayDeque<Frame> frames = new ArrayDeque<Frame>();
+	private static final HashMap<Rid, Long> ridToFrame = new HashMap<Rid, Long>();
+	private static final HashMap<String, HashMap<Double, AnalogEntry>> analogLatest = new HashMap<String, HashMap<Double, AnalogEntry>>();
+	//Number of the latest frame committed by GCAMain, -1 if none yet.
+	private static long latestCommitted = -1;
+	//Number of the latest frame fed.
+	private static long latestFed = -1;
+	//Highest frame number that had been committed but skipped by the feeder, -1 if none.
+	private static long latestMissing = -1;
+	private static volatile boolean active = false;
+
+	/**
+	 * Set by STMServer's GCAMain when it starts and stops feeding in this JVM, the stop is guaranteed even if GCAMain died.
+	 * Window is cleared on both, a stale window is worse than none.
+	 */
+	public static synchronized void setActive(boolean isActive) {
+		active = isActive;
+		frames.clear();
+		ridToFrame.clear();
+		analogLatest.clear();
+		latestCommitted = -1;
+		latestFed = -1;
+		latestMissing = -1;
+	}
+
+	public static boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Called by GCAMain once a frame is committed into DB, before its import is queued.
+	 * @return The frame number to be given to addFrame for that frame.
+	 */
+	public static synchronized long frameCommitted() {
+		latestCommitted++;
+		evictOutdated();
+		return latestCommitted;
+	}
+
+	/**
+	 * Record an imported frame. Frames must be fed in frame order, but may skip frames.
+	 * @param frameNumber Given by frameCommitted for the frame.
+	 * @param timestamp The GCAMain general vertex's timeStamp.
+	 * @param memberRids Every element imported by the frame.
+	 * @param analogClasses Class of the LTM analog elements within memberRids, aligned with analogRids and analogValues.
+	 * @param analogRids
+	 * @param analogValues Their data value.
+	 */
+	public static synchronized void addFrame(long frameNumber, long timestamp, ArrayList<Rid> memberRids
+			, ArrayList<String> analogClasses, ArrayList<Rid> analogRids, ArrayList<Double> analogValues) {
+		if (!active || frameNumber <= latestFed || frameNumber > latestCommitted)
+			return;
+		if (frameNumber > latestFed + 1)
+			latestMissing = frameNumber - 1;
+		latestFed = frameNumber;
+		//Already outside of reality by the time it is fed, nothing to tell.
+		if (frameNumber <= getBoundary())
+			return;
+
+		for (Rid rid : memberRids)
+			ridToFrame.put(rid, frameNumber);
+		for (int i=0; i<analogClasses.size(); i++) {
+			HashMap<Double, AnalogEntry> classLatest = analogLatest.get(analogClasses.get(i));
+			if (classLatest == null) {
+				classLatest = new HashMap<Double, AnalogEntry>();
+				analogLatest.put(analogClasses.get(i), classLatest);
+			}
+			classLatest.put(analogValues.get(i), new AnalogEntry(analogRids.get(i), frameNumber));
+		}
+		frames.addLast(new Frame(frameNumber, timestamp, memberRids, analogClasses, analogValues));
+	}
+
+	/**
+	 * The oldest of the latest totalGCAFrameAllowedInMemory committed frames, the one that will be replaced when the next frame
+	 * arrives, thus it no longer counts. Negative if fewer frames had been committed since activation, then the boundary lies
+	 * among frames committed before, which only DB knows.
+	 */
+	private static long getBoundary() {
+		return latestCommitted - WorkingMemory.totalGCAFrameAllowedInMemory + 1;
+	}
+
+	/**
+	 * Drop the frames older than the boundary (the boundary frame itself is kept for its timestamp), unless their entries had been
+	 * overwritten by a later frame.
+	 */
+	private static void evictOutdated() {
+		long boundary = getBoundary();
+		while (!frames.isEmpty() && frames.peekFirst().frameNumber < boundary) {
+			Frame frame = frames.removeFirst();
+			for (Rid rid : frame.memberRids) {
+				Long frameNumber = ridToFrame.get(rid);
+				if (frameNumber != null && frameNumber == frame.frameNumber)
+					ridToFrame.remove(rid);
+			}
+			for (int i=0; i<frame.analogClasses.size(); i++) {
+				HashMap<Double, AnalogEntry> classLatest = analogLatest.get(frame.analogClasses.get(i));
+				AnalogEntry entry = classLatest.get(frame.analogValues.get(i));
+				if (entry != null && entry.frameNumber == frame.frameNumber)
+					classLatest.remove(frame.analogValues.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Whether the rid is within the current reality. Same rule as the DB route, within the latest totalGCAFrameAllowedInMemory
+	 * committed frames excluding the oldest of them (the boundary). The rid's own frame number is exact, thus frames missing
+	 * elsewhere in the window don't affect a TRUE. FALSE is only given if no later frame is missing, else the rid may have
+	 * reappeared in a frame the window doesn't hold.
+	 * @return TRUE or FALSE if the rid is known to the window, null if unknown.
+	 */
+	public static synchronized Boolean isInReality(Rid rid) {
+		if (!active)
+			return null;
+		Long frameNumber = ridToFrame.get(rid);
+		if (frameNumber == null)
+			return null;
+		if (frameNumber > getBoundary())
+			return true;
+		if (frameNumber <= latestMissing || latestFed != latestCommitted)
+			return null;
+		return false;
+	}
+
+	/**
+	 * @return TimeStamp of the boundary frame (see isInReality), -1 if the window is inactive or doesn't hold that frame (not enough
+	 * frames committed since activation, or that frame had been dropped), then only DB knows it.
+	 */
+	public static synchronized long getOldestTimestamp() {
+		if (!active || frames.isEmpty() || frames.peekFirst().frameNumber != getBoundary())
+			return -1l;
+		return frames.peekFirst().timestamp;
+	}
+
+	/**
+	 * @return Rid of the latest analog element of the given class holding exactly the given value, null if none within the window or
+	 * if a newer one may exist in a frame the window doesn't hold (dropped or not yet fed).
+	 */
+	public static synchronized Rid getLatestAnalog(String className, double value) {
+		if (!active || latestFed != latestCommitted)
+			return null;
+		HashMap<Double, AnalogEntry> classLatest = analogLatest.get(className);
+		if (classLatest == null)
+			return null;
+		AnalogEntry entry = classLatest.get(value);
+		if (entry == null || entry.frameNumber <= latestMissing || entry.frameNumber <= getBoundary())
+			return null;
+		return entry.rid;
+	}
+}
@@ -1,5 +1,7 @@
 package wm;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -7,6 +9,21 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import isradatabase.Graph;
 import isradatabase.Vertex;
@@ -17,11 +34,21 @@ import utilities.Util;
 
 /**
  * Listen request from any other workers, do PaRc then return.
+ *
+ * Connections are persistent and pipelined, a client keeps one connection open and may have many request in flight on it.
+ * Frame format, both direction: [int length of the rest][long requestId][byte type or status][payload utf8 bytes].
+ * Requests are handed to a bounded worker pool, responses are written back as soon as they complete, possibly out of order,
+ * client pairs them back by requestId. When the pool and its queue are full, the connection reader waits for queue space, which stops it
+ * from reading more from that connection (back pressure) instead of dropping them. Requests are only ever executed by the workers.
  */
 public class WMRequestListener implements Runnable {
 	public static class PACKET {
-		public static final String checkRidExistInWorkingMemory = "1";
-		public static final String eof = "eof";
+		//Request type.
+		public static final byte checkRidExistInWorkingMemory = 1;
+		//Response status.
+		public static final byte notFound = 0;
+		public static final byte found = 1;
+		public static final byte error = 2;
 	}
 
 	private int haltIndex;
@@ -29,6 +56,16 @@ public class WMRequestListener implements Runnable {
 	private ServerSocket serverSocket;
 	private static final int timeout = 25000;
 
+	//Worker pool serving the requests from all connections.
+	private static final int workerCount = 4;
+	private static final int workerQueueCapacity = 256;
+	private ThreadPoolExecutor workerPool;
+	private final Set<Socket> clientSockets = Collections.synchronizedSet(new HashSet<Socket>());
+	//Each worker owns a graph, reused across requests and shutdown when the worker exits.
+	private final ThreadLocal<Graph> workerGraph = new ThreadLocal<Graph>();
+	//How long a reader waits for queue space before checking again whether the pool is shutting down.
+	private static final long workerQueueOfferMilli = 100;
+
 	public WMRequestListener (int givenHaltIndex, int givenPort, String givenNodeUID, Graph txGraph) {
 		//Setup port and update the configuration specifically for this WMRequestListener.
 		try {
@@ -50,44 +87,180 @@ public class WMRequestListener implements Runnable {
 	}
 
 	/**
-	 * Add request to the WMListener, which will manage all the IO transparently and return the result.
-	 * @param rid The rid of the vertex to be matched.
-	 * @param txGraph
-	 * @return Empty string if not found, RID string if found.
+	 * Write a single frame, caller must hold the stream's lock as many thread share the same connection.
 	 */
-	public static String addRequest (String rid, Graph txGraph) {
-		/*
-		 * NOTE THAT network semantic is port client close, stream receiver close.
-		 */
-		Vertex config = txGraph.getFirstVertexOfClass(DBCN.V.worker.WMRequestListener.cn);
-		String hostName = config.getProperty(LP.hostName);
-		int port = config.getProperty(LP.port);
+	private static void writeFrame(DataOutputStream os, long requestId, byte typeOrStatus, String payload) throws IOException {
+		byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+		os.writeInt(8 + 1 + payloadBytes.length);
+		os.writeLong(requestId);
+		os.writeByte(typeOrStatus);
+		os.write(payloadBytes);
+		os.flush();
+	}
 
-		//Connect to the WM server.
-		try {
+	/**
+	 * Client side of the protocol, one persistent connection per process shared by all threads.
+	 */
+	private static class ClientConnection {
+		private static class PendingRequest {
+			final CountDownLatch done = new CountDownLatch(1);
+			volatile byte status;
+			volatile String result;
+			volatile IOException error;
+		}
+
+		private final Socket socket;
+		private final DataOutputStream os;
+		private final DataInputStream is;
+		private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<Long, PendingRequest>();
+		private volatile boolean closed = false;
+
+		ClientConnection(String hostName, int port) throws IOException {
 			//http://stackoverflow.com/questions/4969760/set-timeout-for-socket
 			//http://stackoverflow.com/questions/5632279/how-to-set-timeout-on-client-socket-connection
-			Socket socket = new Socket();
-			//Connection time out.
+			socket = new Socket();
+			//Connection time out. No read time out as the reader idles between requests, each request has its own time out instead.
 			socket.connect(new InetSocketAddress(hostName, port), timeout);
-			//connected but no response, read time out.
-			socket.setSoTimeout(timeout);
+			socket.setTcpNoDelay(true);
+			os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+			Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					readResponses();
+				}
+			}, "WMRequestClientReader");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		/**
+		 * Dispatch every response to its waiting request until the connection breaks.
+		 */
+		private void readResponses() {
+			try {
+				while (true) {
+					int length = is.readInt();
+					if (length < 9)
+						throw new IOException("WMRequest response frame too short, length: " + length);
+					long requestId = is.readLong();
+					byte status = is.readByte();
+					byte[] payload = new byte[length - 9];
+					is.readFully(payload);
+
+					PendingRequest request = pending.remove(requestId);
+					//Already timed out and abandoned by its caller.
+					if (request == null)
+						continue;
+					request.status = status;
+					request.result = new String(payload, StandardCharsets.UTF_8);
+					request.done.countDown();
+				}
+			}
+			catch (IOException e) {
+				close(e);
+			}
+		}
 
-			DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+		/**
+		 * Fail every in flight request, the next addRequest will reconnect.
+		 */
+		void close(IOException cause) {
+			closed = true;
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//Already broken, nothing else to do.
+			}
+			for (Long requestId : pending.keySet()) {
+				PendingRequest request = pending.remove(requestId);
+				if (request != null) {
+					request.error = cause;
+					request.done.countDown();
+				}
+			}
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * Send the request and block until its response arrives.
+		 */
+		PendingRequest request(long requestId, byte type, String payload) throws IOException {
+			PendingRequest request = new PendingRequest();
+			pending.put(requestId, request);
+			//Broken right before we register, it will never be answered nor failed by close().
+			if (closed) {
+				pending.remove(requestId);
+				throw new IOException("WMRequest connection already closed.");
+			}
+			try {
+				synchronized (os) {
+					writeFrame(os, requestId, type, payload);
+				}
+			}
+			catch (IOException e) {
+				close(e);
+				throw e;
+			}
 
-			//Write the request header and its parameter.
-			os.writeUTF(PACKET.checkRidExistInWorkingMemory + " " + rid);
-			os.flush();
+			try {
+				if (!request.done.await(timeout, TimeUnit.MILLISECONDS)) {
+					//Abandon only this request, the connection is shared by every other in flight request and stays open for them.
+					//Its late response (if any) is discarded by the reader.
+					pending.remove(requestId);
+					throw new SocketTimeoutException("WMRequest id: " + requestId + " timed out after " + timeout + "ms.");
+				}
+			}
+			catch (InterruptedException e) {
+				pending.remove(requestId);
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for WMRequest id: " + requestId, e);
+			}
+			if (request.error != null)
+				throw request.error;
+			return request;
+		}
+	}
+	private static ClientConnection clientConnection = null;
+	private static final AtomicLong nextRequestId = new AtomicLong(0);
 
-			DataInputStream is = new DataInputStream(socket.getInputStream());
-			String result = is.readUTF();
-			if (result.equals("0"))
-				result = "";
+	/**
+	 * Get the shared connection, (re)connect if it doesn't exist or had broken. The listener's host and port are only read from
+	 * DB during (re)connection.
+	 */
+	private static synchronized ClientConnection getClientConnection(Graph txGraph) throws IOException {
+		if (clientConnection == null || clientConnection.isClosed()) {
+			Vertex config = txGraph.getFirstVertexOfClass(DBCN.V.worker.WMRequestListener.cn);
+			String hostName = config.getProperty(LP.hostName);
+			int port = config.getProperty(LP.port);
+			clientConnection = new ClientConnection(hostName, port);
+		}
+		return clientConnection;
+	}
 
-			is.close();
-			socket.close();
+	/**
+	 * Add request to the WMListener, which will manage all the IO transparently and return the result.
+	 * Thread safe, all threads share the same persistent connection and may have their request in flight concurrently.
+	 * @param rid The rid of the vertex to be matched.
+	 * @param txGraph
+	 * @return Empty string if not found, RID string if found.
+	 */
+	public static String addRequest (String rid, Graph txGraph) {
+		try {
+			ClientConnection connection = getClientConnection(txGraph);
+			ClientConnection.PendingRequest response = connection.request(nextRequestId.incrementAndGet(),
+					PACKET.checkRidExistInWorkingMemory, rid);
 
-			return result;
+			if (response.status == PACKET.error)
+				throw new IllegalStateException("At WMRequestListener client function addRequest, server failed to process rid: " + rid
+						+ "; Server message: " + response.result);
+			if (response.status == PACKET.notFound)
+				return "";
+			return response.result;
 		} catch (IOException e) {
 			//Only treat it as exceptional if the host is still online but IOException occurs.
 			if (StartupSoft.online.get())
@@ -106,12 +279,143 @@ public class WMRequestListener implements Runnable {
 		}
 	}
 
+	/**
+	 * Serve a single persistent connection, read requests until the client close it and hand them to the worker pool.
+	 */
+	private void serveConnection(final Socket clientSocket) {
+		/*
+		 * NOTE THAT network semantic is port client close, stream receiver close.
+		 */
+		try {
+			clientSocket.setTcpNoDelay(true);
+			DataInputStream is = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+			final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+			while (!StartupSoft.halt.get(haltIndex).get()) {
+				int length = is.readInt();
+				if (length < 9)
+					throw new IllegalStateException("At WM, frame too short. Expecting requestId(8 byte) + type(1 byte) "
+							+ "+ param(unknown byte) but get length: " + length);
+				final long requestId = is.readLong();
+				final byte request = is.readByte();
+				byte[] payload = new byte[length - 9];
+				is.readFully(payload);
+				final String data = new String(payload, StandardCharsets.UTF_8);
+
+				workerPool.execute(new Runnable() {
+					@Override
+					public void run() {
+						handleRequest(requestId, request, data, os);
+					}
+				});
+			}
+		}
+		catch (IOException | RejectedExecutionException e) {
+			//Client closed the connection or listener is halting, both are normal end of the connection.
+		}
+		finally {
+			clientSockets.remove(clientSocket);
+			try {
+				clientSocket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private Graph getWorkerGraph() {
+		Graph txGraph = workerGraph.get();
+		if (txGraph == null) {
+			txGraph = StartupSoft.factory.getTx();
+			txGraph.loggerSet(StartupSoft.logger, null);
+			workerGraph.set(txGraph);
+		}
+		return txGraph;
+	}
+
+	private void releaseWorkerGraph() {
+		Graph txGraph = workerGraph.get();
+		if (txGraph != null) {
+			workerGraph.remove();
+			txGraph.shutdown();
+		}
+	}
+
+	private void handleRequest(long requestId, byte request, String data, DataOutputStream os) {
+		byte status;
+		String result;
+		try {
+			if (request == PACKET.checkRidExistInWorkingMemory) {
+				//Expect only 1 rid per network request call.
+				String resultRid = WorkingMemory.checkRidExistInReality(data, getWorkerGraph());
+
+				//If exist, write the rid, else not found.
+				status = resultRid.equals("") ? PACKET.notFound : PACKET.found;
+				result = resultRid;
+			}
+			else {
+				status = PACKET.error;
+				result = "Unknown request type: " + request;
+			}
+		}
+		catch (RuntimeException e) {
+			status = PACKET.error;
+			result = Util.stackTraceToString(e);
+		}
+
+		//Return a response to the original caller.
+		try {
+			synchronized (os) {
+				writeFrame(os, requestId, status, result);
+			}
+		} catch (IOException e) {
+			//Connection gone, its reader will clean it up.
+			e.printStackTrace();
+		}
+	}
+
 	@Override
 	public void run() {
 		System.out.println("WMRequestListener for WM: " + nodeUID + " ONLINE. hostName: " + serverSocket.getInetAddress().getHostAddress() + "; port: " + serverSocket.getLocalPort());
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		workerPool = new ThreadPoolExecutor(workerCount, workerCount, 0l, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(workerQueueCapacity), new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						//Workers only exit when the pool is shutdown, release their graph with them.
+						Thread thread = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									r.run();
+								}
+								finally {
+									releaseWorkerGraph();
+								}
+							}
+						}, "WMRequestListenerWorker-" + nodeUID + "-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler() {
+					//Full, block the connection reader until there is space, never run the request on the reader itself.
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						try {
+							while (!executor.isShutdown()) {
+								if (executor.getQueue().offer(r, workerQueueOfferMilli, TimeUnit.MILLISECONDS))
+									return;
+							}
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						throw new RejectedExecutionException("WMRequestListener worker pool is shutting down.");
+					}
+				});
+
 		//While your parent thread is not halted yet, this shares the halt index of his parent WM service.
 		while (!StartupSoft.halt.get(haltIndex).get()) {
-			Socket clientSocket = null;
+			final Socket clientSocket;
 			try {
 				//Timeout periodically to check whether isHalt() or not.
 				//http://stackoverflow.com/questions/2983835/how-can-i-interrupt-a-serversocket-accept-method
@@ -120,63 +424,44 @@ public class WMRequestListener implements Runnable {
 			catch (SocketTimeoutException ste) {
 				continue;
 			} catch (IOException e) {
+				//Closed by halt().
+				if (serverSocket.isClosed())
+					break;
 				throw new IllegalStateException("WM Request Listener: Error during serverSocket.accept(). Original message: " + e.getMessage());
 			}
 			if (clientSocket.isClosed()) {
 				throw new IllegalStateException("At WM handle request: The given connection is already closed. Addr: "
 						+ clientSocket.getInetAddress().getHostAddress() + " Port:" + clientSocket.getPort());
 			}
-			try {
-				/*
-				 * NOTE THAT network semantic is port client close, stream receiver close.
-				 */
-				DataInputStream is = new DataInputStream(clientSocket.getInputStream());
-				DataOutputStream os = new DataOutputStream(clientSocket.getOutputStream());
-				String inputData = is.readUTF();
-				if (inputData.length() < 2)
-					throw new IllegalStateException("At WM, inputData too short. Expecting command(1 char) + ' '(1 char) "
-							+ "+ param(unknown char) but get: '" + inputData + "'");
-
-				String request = inputData.substring(0, 1);
-				String data = inputData.substring(2, inputData.length());
-
-				if (request.equals(WMRequestListener.PACKET.checkRidExistInWorkingMemory)) {
-					Graph txGraph = StartupSoft.factory.getTx();
-					txGraph.loggerSet(StartupSoft.logger, null);
-					//Expect only 1 rid per network request call.
-					String resultRid = WorkingMemory.checkRidExistInReality(data, txGraph);
-					boolean isExist = true;
-
-					if (resultRid.equals(""))
-						isExist = false;
-
-					//Return a response to the original caller then clean up.
-					try {
-
-						//If exist, write the rid, else false (0)
-						if (isExist)
-							os.writeUTF(resultRid);
-						else
-							os.writeUTF("0");
-
-						os.flush();
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
+
+			//Each persistent connection gets its own reader, the actual work is done by the worker pool.
+			clientSockets.add(clientSocket);
+			Thread connectionThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					serveConnection(clientSocket);
 				}
-				is.close();
-			}
-			catch (IOException e) {
-				throw new IllegalStateException("WM Request Listener: Error during processing user input. Original message: " + e.getMessage());
-			}
+			}, "WMRequestListenerConnection-" + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
+			connectionThread.setDaemon(true);
+			connectionThread.start();
 		}
 
-		//Close the server socket and exit.
+		//Close the server socket and all the connections then exit.
 		try {
 			serverSocket.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		synchronized (clientSockets) {
+			for (Socket clientSocket : clientSockets) {
+				try {
+					clientSocket.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		workerPool.shutdown();
 		System.out.println("WMRequestListener for WM: " + nodeUID + " Closed.");
 	}
 }
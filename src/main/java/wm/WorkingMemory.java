@@ -17,6 +17,7 @@ import crawler.CRAWLERTASK;
 import isradatabase.Direction;
 import isradatabase.Edge;
 import isradatabase.Graph;
+import isradatabase.Rid;
 import isradatabase.Vertex;
 import linkProperty.LinkProperty.LP;
 import logger.Logger.CLA;
@@ -280,13 +281,16 @@ public class WorkingMemory implements Runnable {
 					+ "secondary convergence rid:" + selectedSecondary.getRid());
 
 		privateRecursiveScheduledElementSession.data.put(depth, scheduledElement);
-		StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM,
-				"ScheduledElementTraceSource: " + scheduledElement.ICLPatterns.size() + " " + scheduledElement.ICLPatterns.keys().size() + " "
-				+ new ArrayList(scheduledElement.ICLPatterns.keys()).size() + " "
-				+ scheduledElement.processes.size() + " " + scheduledElement.processes.keys().size() + " " +
-				new ArrayList(scheduledElement.processes.keys()).size() + " "
-				+ scheduledElement.predictions.size() + " " + scheduledElement.predictions.keys().size() + " "
-				+ new ArrayList(scheduledElement.predictions.keys()).size());
+		//Per element trace, copies every key set, only build it if it is going to be logged.
+		if (StartupSoft.logger.isLoggable(LVL.DEBUG)) {
+			StartupSoft.logger.log(logCredential, LVL.DEBUG, CLA.NORM,
+					"ScheduledElementTraceSource: " + scheduledElement.ICLPatterns.size() + " " + scheduledElement.ICLPatterns.keys().size() + " "
+					+ new ArrayList(scheduledElement.ICLPatterns.keys()).size() + " "
+					+ scheduledElement.processes.size() + " " + scheduledElement.processes.keys().size() + " " +
+					new ArrayList(scheduledElement.processes.keys()).size() + " "
+					+ scheduledElement.predictions.size() + " " + scheduledElement.predictions.keys().size() + " "
+					+ new ArrayList(scheduledElement.predictions.keys()).size());
+		}
 
 		//Setup a new instance of mainConvergence for each of them.
 		try {
@@ -594,6 +598,37 @@ public class WorkingMemory implements Runnable {
 		return false;
 	}
 
+	/**
+	 * Check whether the given vertex is within the current WM by its GCA frame, ask the in memory RealityWindow first, only if it
+	 * doesn't know the vertex then traverse to its GCA frame and compare its timestamp against the frame that will be outdated next.
+	 * May throw IllegalArgumentException if the vertex is not part of any GCA frame.
+	 */
+	private static boolean isInReality(Vertex generalVertex, Graph txGraph) {
+		Boolean windowResult = RealityWindow.isInReality(generalVertex.getRidValue());
+		if (windowResult != null)
+			return windowResult;
+
+		long fetchedGCAMainRecordTime = Util.traverseGetGCAMainGeneral(generalVertex, txGraph).getProperty(LP.timeStamp);
+		//If our fetched frame is more latter than the allowed time, means we are in active WM range.
+		return fetchedGCAMainRecordTime > getBeforeOutdatedTimestamp(txGraph);
+	}
+
+	/**
+	 * The frame that will be replaced when new frame arrive (will no longer be treated as within current WM soon).
+	 * Query: Get a frame from GCAMain list, want only the first frame that will be overridden if a new frame comes in and
+	 * exceed the allowed limit or not (if not, then it will not be overridden, this is only possible during startup where frames
+	 * count haven't reaches the limit yet, not important as the query expected it well).
+	 * Taken from the RealityWindow once it had been filled, else from DB.
+	 */
+	private static long getBeforeOutdatedTimestamp(Graph txGraph) {
+		long windowTimestamp = RealityWindow.getOldestTimestamp();
+		if (windowTimestamp != -1l)
+			return windowTimestamp;
+		Vertex nextToBeOutatedGCAFrame = txGraph.directQueryExpectVertex("select from (select from " + DBCN.V.general.GCAMain.cn +
+				" order by @rid desc limit " + totalGCAFrameAllowedInMemory + ") order by " + LP.timeStamp.toString() + " limit 1").get(0);
+		return nextToBeOutatedGCAFrame.getProperty(LP.timeStamp);
+	}
+
 	/**
 	 * Check whether RID's latest form exist in latest reality. Used by WMRequestListener and here only.
 	 * Main logic of Prediction against Reality check (PaRc).
@@ -626,18 +661,25 @@ public class WorkingMemory implements Runnable {
 			//Create an 'occurrence' edge to the latest matching vertex that share same value if available from the given vertex.
 			//This returns the matching data vertex where it has the data field against our current
 			//given general vertex's data vertex's data field.
-			ArrayList<Vertex> latestMatchingDataVertexList = txGraph.directQueryExpectVertex("select from (select expand(in(" + DBCN.E.data + ")) from " +
-					givenVertex.getCName() + " order by @rid desc limit " + totalGCAFrameAllowedInMemory + ") where data = " +
-					givenVertexDataValue + " limit 1");
-
-			//If no matches, return empty string.
-			if (latestMatchingDataVertexList.isEmpty())
-				return "";
-
-			Vertex latestMatchingDataVertex = latestMatchingDataVertexList.get(0);
-			//Thus we have to traverse it back to its general vertex as only general vertex is eligible to hold any 'occurrence' edge,
-			//data vertex are meant to be static.
-			Vertex latestMatchingGeneralVertex = Util.traverseOnce(latestMatchingDataVertex, Direction.OUT, DBCN.E.data, LTM.MOVEMENT);
+			//Latest frames are indexed in memory by value if GCAMain runs in this JVM, else (or not found there) scan them in DB.
+			Vertex latestMatchingGeneralVertex = null;
+			Rid windowMatchingRid = RealityWindow.getLatestAnalog(givenVertex.getCName(), givenVertexDataValue);
+			if (windowMatchingRid != null)
+				latestMatchingGeneralVertex = Util.ridToVertex(windowMatchingRid, txGraph);
+			else {
+				ArrayList<Vertex> latestMatchingDataVertexList = txGraph.directQueryExpectVertex("select from (select expand(in(" + DBCN.E.data + ")) from " +
+						givenVertex.getCName() + " order by @rid desc limit " + totalGCAFrameAllowedInMemory + ") where data = " +
+						givenVertexDataValue + " limit 1");
+
+				//If no matches, return empty string.
+				if (latestMatchingDataVertexList.isEmpty())
+					return "";
+
+				Vertex latestMatchingDataVertex = latestMatchingDataVertexList.get(0);
+				//Thus we have to traverse it back to its general vertex as only general vertex is eligible to hold any 'occurrence' edge,
+				//data vertex are meant to be static.
+				latestMatchingGeneralVertex = Util.traverseOnce(latestMatchingDataVertex, Direction.OUT, DBCN.E.data, LTM.MOVEMENT);
+			}
 
 			//Must create another transaction as it had shown error due to concurrent modification error if we cramp this
 			//edge setup into the query.
@@ -673,15 +715,6 @@ public class WorkingMemory implements Runnable {
 		 * given round as they are archived. Note that every element in ISRA is unique but can be related or treated as 'same' by the mean of
 		 * occurrence or parent.
 		 */
-		/**
-		 * The frame that will be replaced when new frame arrive (will no longer be treated as within current WM soon).
-		 * Query: Get a frame from GCAMain list, want only the first frame that will be overridden if a new frame comes in and
-		 * exceed the allowed limit or not (if not, then it will not be overridden, this is only possible during startup where frames
-		 * count haven't reaches the limit yet, not important as the query expected it well).
-		 */
-		Vertex nextToBeOutatedGCAFrame = txGraph.directQueryExpectVertex("select from (select from " + DBCN.V.general.GCAMain.cn +
-				" order by @rid desc limit " + totalGCAFrameAllowedInMemory + ") order by " + LP.timeStamp.toString() + " limit 1").get(0);
-		long beforeOutdatedTimestamp = nextToBeOutatedGCAFrame.getProperty(LP.timeStamp);
 		ArrayList<Vertex> occurrences = Util.traverse(givenVertex, Direction.IN, DBCN.E.occurrence);
 
 		//If type is raw data analog, it is a sure pass, but rawDataGCA that contains him may haven't been finalized yet, thus cannot
@@ -721,11 +754,7 @@ public class WorkingMemory implements Runnable {
 			//Check whether the rid exist in current WM by comparing their timestamp.
 			if (!ridExistInWM) {
 				System.out.println("finalSelectedOccurrece: " + finalSelectedOccurrece);
-				long fetchedGCAMainRecordTime = Util.traverseGetGCAMainGeneral(finalSelectedOccurrece, txGraph).getProperty(LP.timeStamp);
-
-				//If our fetched frame is more latter than the allowed time, means we are in active WM range.
-				if (fetchedGCAMainRecordTime > beforeOutdatedTimestamp)
-					ridExistInWM = true;
+				ridExistInWM = isInReality(finalSelectedOccurrece, txGraph);
 			}
 
 			if (ridExistInWM) {
@@ -788,13 +817,8 @@ public class WorkingMemory implements Runnable {
 					}
 
 					//Check whether the rid exist in current WM by comparing their timestamp.
-					if (!ridExistInWM) {
-						long fetchedGCAMainRecordTime = Util.traverseGetGCAMainGeneral(expMainGeneral, txGraph).getProperty(LP.timeStamp);
-
-						//If our fetched frame is more latter than the allowed time, means we are in active WM range.
-						if (fetchedGCAMainRecordTime > beforeOutdatedTimestamp)
-							ridExistInWM = true;
-					}
+					if (!ridExistInWM)
+						ridExistInWM = isInReality(expMainGeneral, txGraph);
 					if (ridExistInWM) {
 						if (givenVertexType.equals(DBCN.V.general.exp.prediction.cn)) {
 							Vertex expResultGeneral = Util.traverseOnce(expMainData, Direction.IN, DBCN.E.result, DBCN.V.general.exp.result.cn);
@@ -811,13 +835,8 @@ public class WorkingMemory implements Runnable {
 			else if (Util.equalAny(givenVertexType, LTM.GENERAL)) {
 				if (!check.isEmpty()) {
 					//Check whether the rid exist in current WM by comparing their timestamp.
-					if (!ridExistInWM) {
-						long fetchedGCAMainRecordTime = Util.traverseGetGCAMainGeneral(givenVertex, txGraph).getProperty(LP.timeStamp);
-
-						//If our fetched frame is more latter than the allowed time, means we are in active WM range.
-						if (fetchedGCAMainRecordTime > beforeOutdatedTimestamp)
-							ridExistInWM = true;
-					}
+					if (!ridExistInWM)
+						ridExistInWM = isInReality(givenVertex, txGraph);
 					if (ridExistInWM) {
 						return rid;
 					}
@@ -866,6 +885,46 @@ public class WorkingMemory implements Runnable {
 		return result;
 	}
 
+	/**
+	 * Pick the new attention point among the candidates, all arrays are aligned by candidate index.
+	 * Each candidate is scored by its rank in polyVal distance (shortest first) plus its rank in timeRan (least first), ties in rank
+	 * keep the fetch order. The best scored candidate wins, unless other candidates share its timeRan, then the lowest depth among
+	 * them win as they are more unique than anything else, a solution that is less popular than common mind and yet special enough
+	 * to have so less timeRan. Depth ties are resolved by score.
+	 * @return Index of the selected candidate.
+	 */
+	static int selectAttentionIndex(double[] polyValDistance, long[] timeRans, int[] depths) {
+		int[] polyValDistanceRank = Util.sortGetRank(polyValDistance);
+		int[] timeRanRank = Util.sortGetRank(timeRans);
+
+		//Best mixed score, earliest candidate on tie.
+		int bestIndex = 0;
+		int bestScore = polyValDistanceRank[0] + timeRanRank[0];
+		for (int i=1; i<polyValDistance.length; i++) {
+			int score = polyValDistanceRank[i] + timeRanRank[i];
+			if (score < bestScore) {
+				bestScore = score;
+				bestIndex = i;
+			}
+		}
+
+		//Among those sharing the best one's timeRan, lowest depth, then best score, then earliest.
+		long bestTimeRan = timeRans[bestIndex];
+		int selectedIndex = bestIndex;
+		int selectedScore = bestScore;
+		for (int i=0; i<polyValDistance.length; i++) {
+			if (timeRans[i] != bestTimeRan || i == selectedIndex)
+				continue;
+			int score = polyValDistanceRank[i] + timeRanRank[i];
+			if (depths[i] < depths[selectedIndex]
+					|| (depths[i] == depths[selectedIndex] && (score < selectedScore || (score == selectedScore && i < selectedIndex)))) {
+				selectedIndex = i;
+				selectedScore = score;
+			}
+		}
+		return selectedIndex;
+	}
+
 	public void startService() {
 		//When internal errors occurs, it may need to rollback multiple great transaction as a whole, this is to indicate that error occurs and
 		//big rollback of all concerned things are required. Will be in effect after solution support nested commit.
@@ -981,14 +1040,16 @@ public class WorkingMemory implements Runnable {
 						//Store the time of the first task that had reached the time for it to run (checkIsNow() pass).
 						long checkIsNowPassedFirstStartTime = -1;
 
-						StartupSoft.logger.log(logCredential, LVL.INFO, CLA.NORM,
-								"ScheduledElementTraceUser: " + scheduledElement.ICLPatterns.size() + " " + scheduledElement.ICLPatterns.keys().size() + " "
-								+ new ArrayList<Long>(scheduledElement.ICLPatterns.keys()).size() + " "
-								+ scheduledElement.processes.size() + " " + scheduledElement.processes.keys().size() + " " +
-								new ArrayList<Long>(scheduledElement.processes.keys()).size() + " "
-								+ scheduledElement.predictions.size() + " " + scheduledElement.predictions.keys().size() + " "
-								+ new ArrayList<Long>(scheduledElement.predictions.keys()).size() + "  ID: "
-								+ scheduledElement.secondaryVertex );
+						if (StartupSoft.logger.isLoggable(LVL.DEBUG)) {
+							StartupSoft.logger.log(logCredential, LVL.DEBUG, CLA.NORM,
+									"ScheduledElementTraceUser: " + scheduledElement.ICLPatterns.size() + " " + scheduledElement.ICLPatterns.keys().size() + " "
+									+ new ArrayList<Long>(scheduledElement.ICLPatterns.keys()).size() + " "
+									+ scheduledElement.processes.size() + " " + scheduledElement.processes.keys().size() + " " +
+									new ArrayList<Long>(scheduledElement.processes.keys()).size() + " "
+									+ scheduledElement.predictions.size() + " " + scheduledElement.predictions.keys().size() + " "
+									+ new ArrayList<Long>(scheduledElement.predictions.keys()).size() + "  ID: "
+									+ scheduledElement.secondaryVertex );
+						}
 
 						//Forward physical output to external device.
 						if (!scheduledElement.processDone) {
@@ -1666,11 +1727,23 @@ public class WorkingMemory implements Runnable {
 				//Record the class name, used for record deletion below.
 				String LTMTimeRanLowOriginClusterName = null;
 				for (String indexClassName : timeRanIndexClassClusterNameList) {
-					LTMTimeRanLow = txGraph.directQueryExpectVertex("select expand(rid) from (select abs(eval('key - " + globalDist
-							+ "')) as nearest, rid from (SELECT FROM INDEX:" + indexClassName +
-							" WHERE key < 2 limit 1000) order by nearest asc limit 1)");
+					//Fetch the raw entries and pick the key nearest to globalDist here, instead of eval() in SQL which requires
+					//globalDist to be concatenated into the text, making it a brand new statement every time.
+					ArrayList<Graph.IndexEntry> timeRanLowEntry = txGraph.preparedQueryExpectIndexEntry("SELECT FROM INDEX:" + indexClassName
+							+ " WHERE key < ? LIMIT 1000", 2);
 					//If we got the data, just break, doesn't need to query all indexes anymore.
-					if (!LTMTimeRanLow.isEmpty()) {
+					if (!timeRanLowEntry.isEmpty()) {
+						Graph.IndexEntry nearest = null;
+						double nearestDistance = Double.MAX_VALUE;
+						for (Graph.IndexEntry entry : timeRanLowEntry) {
+							double distance = Math.abs(((Number) entry.key).doubleValue() - globalDist);
+							if (distance < nearestDistance) {
+								nearestDistance = distance;
+								nearest = entry;
+							}
+						}
+						LTMTimeRanLow = new ArrayList<Vertex>();
+						LTMTimeRanLow.add(Util.ridToVertex(nearest.rid, txGraph));
 						LTMTimeRanLowOriginClusterName = indexClassName;
 						break;
 					}
@@ -1707,8 +1780,8 @@ public class WorkingMemory implements Runnable {
 					Vertex selectedNewAttentionVertex = LTMTimeRanLow.get(0);
 
 					//Remove the LTM low entry so it will not be selected again, it will return at the next GCA frame as new data.
-					txGraph.directQueryExpectVoid("DELETE FROM INDEX:" + LTMTimeRanLowOriginClusterName + " WHERE key = " +
-							selectedNewAttentionVertex.getProperty(LP.occurrenceCountPR) + " AND rid = " + selectedNewAttentionVertex.getRid());
+					txGraph.preparedQueryExpectVoid("DELETE FROM INDEX:" + LTMTimeRanLowOriginClusterName + " WHERE key = ? AND rid = ?"
+							, selectedNewAttentionVertex.getProperty(LP.occurrenceCountPR), Graph.rid(selectedNewAttentionVertex.getRid()));
 
 					//Commit retry model.
 					boolean txError = true;
@@ -1821,9 +1894,6 @@ public class WorkingMemory implements Runnable {
 
 				//-Begin select new attention point. Read 30-6-16 for design details.
 				ArrayList<Vertex> precisionVertexList = new ArrayList<Vertex>();
-				ArrayList<Double> polyVals = new ArrayList<Double>();
-				ArrayList<Integer> depths = new ArrayList<Integer>();
-				ArrayList<Long> timeRans = new ArrayList<Long>();
 
 				/*
 				 * Using clustered index logic, seek for each cluster, then aggregate all of their data to form a better view of reality
@@ -1833,14 +1903,14 @@ public class WorkingMemory implements Runnable {
 				//Seek usual route where timeRan is lower than normal, polyVal is close to globalDist and depth is nominal but precision high.
 				if (preferUniqueRoute) {
 					for (String indexClassName : precisionRateIndexClassClusterNameList) {
-						precisionVertexList.addAll( txGraph.directQueryExpectVertex("select expand(rid) from (SELECT FROM INDEX:" +
+						precisionVertexList.addAll( txGraph.preparedQueryExpectVertex("select expand(rid) from (SELECT FROM INDEX:" +
 								indexClassName + " WHERE key < 25 limit 100)") );
 					}
 				}
 				//Seek unique route where timeRan is lower than normal, polyVal is close to globalDist and depth is nominal but precision low.
 				else {
 					for (String indexClassName : precisionRateIndexClassClusterNameList) {
-						precisionVertexList.addAll( txGraph.directQueryExpectVertex("select expand(rid) from (SELECT FROM INDEX:" +
+						precisionVertexList.addAll( txGraph.preparedQueryExpectVertex("select expand(rid) from (SELECT FROM INDEX:" +
 								indexClassName + " WHERE key > 75 limit 100)") );
 					}
 				}
@@ -1850,82 +1920,19 @@ public class WorkingMemory implements Runnable {
 				if (precisionVertexList.isEmpty())
 					continue;
 
-				//Extract their polyVals and depths.
-				for (Vertex currentPrecisionVertex : precisionVertexList) {
-					polyVals.add(currentPrecisionVertex.getProperty(LP.polyVal));
-					depths.add(currentPrecisionVertex.getProperty(LP.depth));
-					timeRans.add(currentPrecisionVertex.getProperty(LP.occurrenceCountPR));
-				}
-				if (!( precisionVertexList.size() == polyVals.size() && precisionVertexList.size() == depths.size()
-						&& precisionVertexList.size() == timeRans.size() )) {
-					throw new IllegalStateException("List size not equal, precisionSize: " + precisionVertexList.size()
-					+ " depthSize: " + depths.size() + " timeRanSize: " + timeRans.size());
-				}
-
-				//Reorder the solutions based on their distance to globalDist (relevancy against current global demand).
-				//Double is the distance, string is the concerned rid. Only polyVal need this bonus step.
-				ArrayList<Double> polyValDistance = new ArrayList<Double>();
-				for (int i=0; i<polyVals.size(); i++) {
-					polyValDistance.add( Math.abs(globalDist - polyVals.get(i)) );
-				}
-				//Get the scores of each vertex based on index, their index is based on the precisionLowRid array's ordering.
-				ArrayList<Integer> polyValDistanceOrderedIndexScore = Util.sortGetIndex(polyValDistance, true);
-				ArrayList<Integer> depthOrderedIndexScore = Util.sortGetIndex(depths, false);
-				ArrayList<Integer> timeRanOrderedIndexScore = Util.sortGetIndex(timeRans, true);
-
-				//Arrange the solution set to get a list of polyVal distance shortest, timeRan least leading list.
-				ArrayList<Integer> polyValTimeRanMixedScore = new ArrayList<Integer>();
-				for (int i=0; i<polyValDistanceOrderedIndexScore.size(); i++) {
-					int score = polyValDistanceOrderedIndexScore.indexOf(i) + timeRanOrderedIndexScore.indexOf(i);
-					polyValTimeRanMixedScore.add(score);
-				}
-				//Sort the scores and return us the index of the best solution of mixture of polyVal distance and timeRan.
-				ArrayList<Integer> finalPolyValDistanceAndTimeRanMixedIndexScore = Util.sortGetIndex(polyValTimeRanMixedScore, true);
-
-				//Test the solution list to see if the preceding solution has lower depth but share same timeRan count.
-				for (int i=0; i<finalPolyValDistanceAndTimeRanMixedIndexScore.size(); i++) {
-					//TODO: Check whether there is any vertex that has same score but lower depth, if so select it.
-				}
-
-				/*
-				 * Order by polyVal distance, then order by timeRan least first, then resolve by depth,
-				 * if they share same timeRan, then watch by depth, the lowest depth win.
-				 */
-				long bestTimeRan = -1;
-				int selectedLowestDepth = -1;
-				int selectedIndex = -1;
-
-				for (int i=0; i<finalPolyValDistanceAndTimeRanMixedIndexScore.size(); i++) {
-					int finalSortedIndex = finalPolyValDistanceAndTimeRanMixedIndexScore.get(i);
-					if (selectedIndex == -1) {
-						//These are the original data, synchronized with rid, depths and timeRan during fetch.
-						//Best timeRan is essentially the first element of the sorted timeRan. Selected lowest depth is the first element
-						//of the best solution list, and the selected index is i, which is 0, the head of the element as well.
-						bestTimeRan = timeRans.get(finalSortedIndex);
-						selectedLowestDepth = depths.get(finalSortedIndex);
-						selectedIndex = i;
-						continue;
-					}
-
-					//Compare with the current index's data, see if they are better or not.
-					int currentDepth = depths.get(finalSortedIndex);
-					long currentTimeRan = timeRans.get(finalSortedIndex);
-
-					//They must have equal timeRan in order to prove that they are high leveled but in conflict, then check whether
-					//they share the same depth, choose the one with the lowest depth as they are more unique than anything else,
-					//a solution that is less popular than common mind and yet special enough to have so less timeRan.
-					if (currentTimeRan == bestTimeRan) {
-						if (currentDepth < selectedLowestDepth) {
-							selectedLowestDepth = currentDepth;
-							selectedIndex = i;
-						}
-					}
+				//Extract their polyVals' distance to globalDist (relevancy against current global demand), depths and timeRans.
+				int candidateCount = precisionVertexList.size();
+				double[] polyValDistance = new double[candidateCount];
+				int[] depths = new int[candidateCount];
+				long[] timeRans = new long[candidateCount];
+				for (int i=0; i<candidateCount; i++) {
+					Vertex currentPrecisionVertex = precisionVertexList.get(i);
+					polyValDistance[i] = Math.abs(globalDist - currentPrecisionVertex.getDoubleProperty(LP.polyVal));
+					depths[i] = (int) currentPrecisionVertex.getLongProperty(LP.depth);
+					timeRans[i] = currentPrecisionVertex.getLongProperty(LP.occurrenceCountPR);
 				}
 
-				//Must convert it to the final index, as the selectedIndex itself is the index of this list instead of the real index of
-				//the original list, get the final actual index that corresponds to the original ridList ordering by getting
-				//it from the list below.
-				int finalSelectedIndex = finalPolyValDistanceAndTimeRanMixedIndexScore.get(selectedIndex);
+				int finalSelectedIndex = selectAttentionIndex(polyValDistance, timeRans, depths);
 
 				selectedNewAttentionVertex = precisionVertexList.get(finalSelectedIndex);
 				//-End of select new attention point.
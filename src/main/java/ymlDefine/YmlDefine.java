@@ -34,6 +34,7 @@ public abstract class YmlDefine {
 		public long shutdownTimeoutMilli;
 		public String DBCredentialConfigFilePath;
 		public boolean mockDevice;
+		public String logMinLevel;		//Entry below this level are discarded, TRACE, DEBUG, INFO, WARN, ERROR or FATAL.
 
 		public StartUpSoftConfig() {
 			nodeId = "";
@@ -41,6 +42,7 @@ public abstract class YmlDefine {
 			shutdownTimeoutMilli = 300000;
 			DBCredentialConfigFilePath = "";
 			mockDevice = false;
+			logMinLevel = "INFO";
 		}
 	}
 
@@ -0,0 +1,79 @@
+package ICL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import utilities.Util;
+
+public class AudioFingerprintTest {
+	//44100hz mono 16bit, header is 46 byte long.
+	private static final int sampleRate = 44100;
+	private static final int headerLength = 46;
+
+	private double[] readWav(String path) throws IOException {
+		byte[] data = Files.readAllBytes(Paths.get(path));
+		return Util.audioByteArrayToDoubleArray(Arrays.copyOfRange(data, headerLength, data.length));
+	}
+
+	@Test
+	public void recognizeKnownOffset() throws IOException {
+		double[] sample = readWav("resources/test/audioICL/sampleInput.wav");
+		AudioFingerprint engine = new AudioFingerprint(sampleRate);
+		assertTrue(engine.fingerprint(sample) > 0);
+
+		//Cut half second segments at known offset, they should be found within a hop (512 sample ~= 12ms) of the real offset.
+		int segmentLength = sampleRate / 2;
+		for (int offset : new int[] {0, sampleRate / 2, sampleRate, sampleRate * 2}) {
+			if (offset + segmentLength > sample.length)
+				continue;
+			double[] segment = Arrays.copyOfRange(sample, offset, offset + segmentLength);
+			long expectedMilli = (long)offset * 1000l / sampleRate;
+			long recognizedMilli = engine.recognizeOffsetMilli(segment);
+			assertTrue("Expected " + expectedMilli + " got " + recognizedMilli, Math.abs(recognizedMilli - expectedMilli) <= 12);
+		}
+	}
+
+	@Test
+	public void noiseNotRecognized() throws IOException {
+		AudioFingerprint engine = new AudioFingerprint(sampleRate);
+		engine.fingerprint(readWav("resources/test/audioICL/sampleInput.wav"));
+
+		Random random = new Random(1);
+		double[] noise = new double[sampleRate / 2];
+		for (int i=0; i<noise.length; i++)
+			noise[i] = random.nextGaussian() * 0.1d;
+		assertEquals(-1l, engine.recognizeOffsetMilli(noise));
+	}
+
+	@Test
+	public void streamedWindowRecognizeRelativeToWindowStart() throws IOException {
+		double[] sample = readWav("resources/test/audioICL/sampleInput.wav");
+		AudioFingerprint engine = new AudioFingerprint(sampleRate);
+
+		//Feed it 50ms frame by frame with a 2 sec window, like RawDataICL does.
+		int frameLength = 2205;
+		int windowLength = sampleRate * 2;
+		int end = 0;
+		for (; end + frameLength <= sample.length; end += frameLength) {
+			engine.append(Arrays.copyOfRange(sample, end, end + frameLength));
+			if (end + frameLength > windowLength)
+				engine.evictBefore(end + frameLength - windowLength);
+		}
+		int windowStart = end - windowLength;
+
+		double[] segment = Arrays.copyOfRange(sample, windowStart + sampleRate / 2, windowStart + sampleRate);
+		assertTrue(Math.abs(engine.recognizeOffsetMilli(segment) - 500l) <= 12);
+
+		//Evicted region must no longer be recognized.
+		double[] expired = Arrays.copyOfRange(sample, 0, sampleRate / 2);
+		assertEquals(-1l, engine.recognizeOffsetMilli(expired));
+	}
+}
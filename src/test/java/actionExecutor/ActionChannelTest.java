@@ -0,0 +1,190 @@
+package actionExecutor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import logger.Logger;
+import startup.StartupSoft;
+
+/**
+ * Loopback stand in for the rpi actuator receiver.
+ */
+public class ActionChannelTest {
+	@BeforeClass
+	public static void setupLogger() {
+		//Logger is not started, it only collects messages here.
+		if (StartupSoft.logger == null)
+			StartupSoft.logger = new Logger(100, 100l, "");
+	}
+
+	private static class ReceivedFrame {
+		long sequence;
+		long issueTimestamp;
+		long sendTimestamp;
+		double motor1;
+		double motor4;
+		byte[] speaker;
+	}
+
+	private static ReceivedFrame readFrame(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		ReceivedFrame frame = new ReceivedFrame();
+		assertEquals(ActionChannel.frameVersion, in.readByte());
+		frame.sequence = in.readLong();
+		frame.issueTimestamp = in.readLong();
+		frame.sendTimestamp = in.readLong();
+		frame.motor1 = in.readDouble();
+		in.readDouble();
+		in.readDouble();
+		frame.motor4 = in.readDouble();
+		frame.speaker = new byte[in.readInt()];
+		in.readFully(frame.speaker);
+		assertEquals(length, 1 + 8 * 3 + 8 * 4 + 4 + frame.speaker.length);
+		return frame;
+	}
+
+	@Test
+	public void framesArriveInOrderOverOneConnection() throws IOException {
+		ServerSocket server = new ServerSocket(0);
+		ActionChannel channel = new ActionChannel("localhost", server.getLocalPort(), 100, 1000l);
+		try {
+			waitConnected(channel);
+			int total = 500;
+			for (int i=0; i<total; i++) {
+				//Full queue drops the oldest, keep below it so every frame is expected to arrive.
+				while (channel.getPendingCount() > 50)
+					Thread.yield();
+				assertTrue(channel.send(i, -1d, -1d, 100d - i % 100, i % 10 == 0 ? new byte[] {(byte)i, 1, 2} : new byte[0]));
+			}
+
+			Socket client = server.accept();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+			for (int i=0; i<total; i++) {
+				ReceivedFrame frame = readFrame(in);
+				assertEquals(i, frame.sequence);
+				assertEquals((double)i, frame.motor1, 0d);
+				assertEquals(100d - i % 100, frame.motor4, 0d);
+				assertTrue(frame.sendTimestamp >= frame.issueTimestamp);
+				if (i % 10 == 0)
+					assertArrayEquals(new byte[] {(byte)i, 1, 2}, frame.speaker);
+				else
+					assertEquals(0, frame.speaker.length);
+			}
+			assertEquals(total, channel.getSentCount());
+			assertEquals(0, channel.getDroppedCount());
+			client.close();
+		}
+		finally {
+			channel.halt();
+			server.close();
+		}
+	}
+
+	@Test
+	public void reconnectAfterReceiverDropsConnection() throws IOException {
+		ServerSocket server = new ServerSocket(0);
+		ActionChannel channel = new ActionChannel("localhost", server.getLocalPort(), 100, 1000l);
+		try {
+			channel.send(1d, -1d, -1d, -1d, new byte[0]);
+			Socket first = server.accept();
+			DataInputStream in = new DataInputStream(first.getInputStream());
+			assertEquals(0, readFrame(in).sequence);
+			first.close();
+
+			//Keep issuing until the sender notice the broken pipe and come back on a new connection.
+			server.setSoTimeout(100);
+			Socket second = null;
+			for (int i=0; i<100 && second == null; i++) {
+				channel.send(2d, -1d, -1d, -1d, new byte[0]);
+				try {
+					second = server.accept();
+				}
+				catch (SocketTimeoutException e) {
+					//Not yet.
+				}
+			}
+			assertTrue(second != null);
+			assertTrue(channel.getReconnectCount() >= 1);
+			channel.send(3d, -1d, -1d, -1d, new byte[0]);
+			in = new DataInputStream(second.getInputStream());
+			ReceivedFrame frame = readFrame(in);
+			while (frame.motor1 != 3d)
+				frame = readFrame(in);
+			second.close();
+		}
+		finally {
+			channel.halt();
+			server.close();
+		}
+	}
+
+	@Test
+	public void fullQueueDropsOldestWhenReceiverIsAbsent() {
+		//Nothing listens on it, queue fills up and the oldest action is dropped for every new one, caller is never held.
+		ActionChannel channel = new ActionChannel("localhost", 1, 10, 1000l);
+		try {
+			for (int i=0; i<20; i++)
+				assertTrue(channel.send(i, -1d, -1d, -1d, new byte[0]));
+			assertEquals(10, channel.getPendingCount());
+			assertEquals(10, channel.getDroppedCount());
+		}
+		finally {
+			channel.halt();
+		}
+	}
+
+	@Test
+	public void staleFramesAreNotReplayedOnReconnect() throws IOException, InterruptedException {
+		//Reserve a port then close it, the channel keeps queueing while the receiver is away.
+		ServerSocket reserved = new ServerSocket(0);
+		int port = reserved.getLocalPort();
+		reserved.close();
+		ActionChannel channel = new ActionChannel("localhost", port, 100, 50l);
+		ServerSocket server = null;
+		try {
+			for (int i=0; i<5; i++)
+				channel.send(1d, -1d, -1d, -1d, new byte[0]);
+			Thread.sleep(200);
+
+			server = new ServerSocket();
+			server.setReuseAddress(true);
+			server.bind(new InetSocketAddress("localhost", port));
+			Socket client = server.accept();
+			channel.send(2d, -1d, -1d, -1d, new byte[0]);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+			//First thing the device sees after reconnect is the fresh action, the outdated ones are gone.
+			assertEquals(2d, readFrame(in).motor1, 0d);
+			assertEquals(5, channel.getStaleCount());
+			client.close();
+		}
+		finally {
+			channel.halt();
+			if (server != null)
+				server.close();
+		}
+	}
+
+	private static void waitConnected(ActionChannel channel) {
+		for (int i=0; i<200 && !channel.isConnected(); i++) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		assertTrue(channel.isConnected());
+	}
+}
@@ -0,0 +1,106 @@
+package isradatabase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RidTest {
+	@Test
+	public void roundTrip() {
+		String[] rids = {"#0:0", "#9:1", "#123:5123", "#17:1000000007"};
+		for (String rid : rids) {
+			Rid parsed = Rid.parse(rid);
+			assertEquals(rid, parsed.toString());
+			assertEquals(parsed.toLong(), Rid.pack(rid));
+			assertEquals(parsed, Rid.fromLong(parsed.toLong()));
+			assertEquals(parsed, Rid.of(parsed.getClusterId(), parsed.getClusterPosition()));
+			assertEquals(parsed.hashCode(), Rid.of(parsed.getClusterId(), parsed.getClusterPosition()).hashCode());
+		}
+		assertEquals((123l << 48) | 5123l, Rid.pack("#123:5123"));
+	}
+
+	@Test
+	public void maxClusterIdAndPosition() {
+		String max = "#" + Rid.maxClusterId + ":" + Rid.maxClusterPosition;
+		assertEquals("#32767:281474976710655", max);
+		Rid rid = Rid.parse(max);
+		assertEquals(Rid.maxClusterId, rid.getClusterId());
+		assertEquals(Rid.maxClusterPosition, rid.getClusterPosition());
+		assertEquals(max, rid.toString());
+		assertEquals(Long.MAX_VALUE, rid.toLong());
+		assertEquals(rid, Rid.of(Rid.maxClusterId, Rid.maxClusterPosition));
+	}
+
+	@Test
+	public void temporaryRidIsRejected() {
+		assertRejected("#-1:-1");
+		assertRejected("#-1:0");
+		assertRejected("#1:-1");
+		assertOfRejected(-1, -1l);
+		assertOfRejected(1, -2l);
+	}
+
+	@Test
+	public void malformedIsRejected() {
+		String[] invalids = {"", "#", "#:", "12:3", "#1:", "#:1", "#a:1", "#1:b", "#1:2:3", "# 1:2", "#32768:1", "#1:281474976710656"
+				, "#99999999999999999999:1", "#1:99999999999999999999"};
+		for (String invalid : invalids)
+			assertRejected(invalid);
+		assertOfRejected(Rid.maxClusterId + 1, 0l);
+		assertOfRejected(0, Rid.maxClusterPosition + 1);
+
+		boolean thrown = false;
+		try {
+			Rid.fromLong(-1l);
+		}
+		catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		assertTrue("fromLong(-1) must be rejected", thrown);
+	}
+
+	@Test
+	public void orderedByClusterThenPosition() {
+		List<Rid> rids = new ArrayList<Rid>();
+		rids.add(Rid.parse("#2:0"));
+		rids.add(Rid.parse("#1:100"));
+		rids.add(Rid.parse("#" + Rid.maxClusterId + ":0"));
+		rids.add(Rid.parse("#1:" + Rid.maxClusterPosition));
+		rids.add(Rid.parse("#1:2"));
+		rids.add(Rid.parse("#0:5"));
+		Collections.sort(rids);
+		assertEquals("[#0:5, #1:2, #1:100, #1:281474976710655, #2:0, #32767:0]", rids.toString());
+
+		//Packed long order must agree, ICL's sorted long arrays depend on it.
+		for (int i=1; i<rids.size(); i++)
+			assertTrue(rids.get(i - 1).toLong() < rids.get(i).toLong());
+		assertEquals(0, Rid.parse("#3:4").compareTo(Rid.of(3, 4l)));
+	}
+
+	private static void assertRejected(String rid) {
+		boolean thrown = false;
+		try {
+			Rid.parse(rid);
+		}
+		catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		assertTrue("Expected rejection of '" + rid + "'", thrown);
+	}
+
+	private static void assertOfRejected(int clusterId, long clusterPosition) {
+		boolean thrown = false;
+		try {
+			Rid.of(clusterId, clusterPosition);
+		}
+		catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		assertTrue("Expected rejection of #" + clusterId + ":" + clusterPosition, thrown);
+	}
+}
@@ -0,0 +1,59 @@
+package utilities;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Micro benchmark of Util.sortGetIndex against the old HashMultimap based version (which didn't sort at all, kept here only as
+ * the cost baseline), at the sizes used by ACTGDR and WM attention selection.
+ */
+public class SortGetIndexSpeedTest {
+	private static <T> ArrayList<Integer> multimapSortGetIndex(ArrayList<T> arr) {
+		Multimap<T, Integer> sort = HashMultimap.create();
+		for (int i=0; i<arr.size(); i++)
+			sort.put(arr.get(i), i);
+		return new ArrayList<Integer>(sort.values());
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		int iteration = 20000;
+		for (int size : new int[] {10, 100, 1000}) {
+			ArrayList<Double> doubles = new ArrayList<Double>();
+			ArrayList<Long> longs = new ArrayList<Long>();
+			for (int i=0; i<size; i++) {
+				doubles.add(random.nextDouble() * 100d);
+				longs.add((long) random.nextInt(50));
+			}
+
+			//Warm up.
+			long sink = 0;
+			for (int i=0; i<iteration; i++) {
+				sink += Util.sortGetIndex(doubles, true).get(0);
+				sink += Util.sortGetIndex(longs, true).get(0);
+				sink += multimapSortGetIndex(doubles).get(0);
+			}
+
+			long startTime = System.nanoTime();
+			for (int i=0; i<iteration; i++)
+				sink += Util.sortGetIndex(doubles, true).get(0);
+			long doubleTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int i=0; i<iteration; i++)
+				sink += Util.sortGetIndex(longs, true).get(0);
+			long longTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int i=0; i<iteration; i++)
+				sink += multimapSortGetIndex(doubles).get(0);
+			long multimapTime = System.nanoTime() - startTime;
+
+			System.out.println("size " + size + ": double " + doubleTime / iteration + "ns, long " + longTime / iteration
+					+ "ns, old multimap " + multimapTime / iteration + "ns (" + sink + ")");
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import ymlDefine.YmlDefine.TaskDetail;
+
+public class UtilTest {
+	@Test
+	public void kryoRoundTrip() {
+		TaskDetail detail = new TaskDetail();
+		detail.jobId = "-1";
+		detail.jobType = "rawDataDistCacl";
+		detail.source = "";
+		detail.processingAddr = "processing";
+		detail.completedAddr = "completed";
+		detail.replyAddr = "devnull";
+		detail.start = -1;
+		detail.end = 10;
+		TaskDetail decoded = Util.kryoDeserialize(Util.kryoSerialize(detail), TaskDetail.class);
+		assertEquals(detail.jobType, decoded.jobType);
+		assertEquals(detail.processingAddr, decoded.processingAddr);
+		assertEquals(detail.end, decoded.end);
+
+		ArrayList<Double> list = new ArrayList<Double>(Arrays.asList(1d, 2.5d, -3d));
+		ArrayList<Double> decodedList = Util.kryoDeserialize(Util.kryoSerialize(list), ArrayList.class);
+		assertEquals(list, decodedList);
+	}
+
+	@Test
+	public void kryoConcurrent() throws InterruptedException {
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread[] threads = new Thread[8];
+		for (int t=0; t<threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i=0; i<1000; i++) {
+							ArrayList<Integer> list = new ArrayList<Integer>(Arrays.asList(seed, i, seed * i));
+							ArrayList<Integer> decoded = Util.kryoDeserialize(Util.kryoSerialize(list), ArrayList.class);
+							if (!list.equals(decoded))
+								failed.set(true);
+						}
+					}
+					//Thrown within the thread doesn't fail the test by itself, eg a shared Kryo corrupting its buffer.
+					catch (RuntimeException e) {
+						failed.set(true);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertFalse("Concurrent kryo round trip mismatched or threw", failed.get());
+	}
+
+	/**
+	 * Reference argsort, Collections.sort is guaranteed stable.
+	 */
+	private static <T extends Number> ArrayList<Integer> referenceSortGetIndex(final ArrayList<T> arr, final boolean ascending) {
+		ArrayList<Integer> index = new ArrayList<Integer>();
+		for (int i=0; i<arr.size(); i++)
+			index.add(i);
+		Collections.sort(index, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int result = Double.compare(arr.get(a).doubleValue(), arr.get(b).doubleValue());
+				return ascending ? result : -result;
+			}
+		});
+		return index;
+	}
+
+	@Test
+	public void sortGetIndexMatchesReference() {
+		Random random = new Random(42);
+		for (int round=0; round<500; round++) {
+			int size = random.nextInt(200);
+			//Small value range so there are plenty of ties.
+			int range = 1 + random.nextInt(20);
+			ArrayList<Long> longs = new ArrayList<Long>();
+			ArrayList<Integer> ints = new ArrayList<Integer>();
+			ArrayList<Double> doubles = new ArrayList<Double>();
+			for (int i=0; i<size; i++) {
+				longs.add((long) (random.nextInt(range) - range / 2));
+				ints.add(random.nextInt(range));
+				doubles.add((random.nextInt(range) - range / 2) / 4d);
+			}
+			for (boolean ascending : new boolean[] {true, false}) {
+				assertEquals(referenceSortGetIndex(longs, ascending), Util.sortGetIndex(longs, ascending));
+				assertEquals(referenceSortGetIndex(ints, ascending), Util.sortGetIndex(ints, ascending));
+				assertEquals(referenceSortGetIndex(doubles, ascending), Util.sortGetIndex(doubles, ascending));
+			}
+		}
+	}
+
+	@Test
+	public void sortGetIndexEdgeValues() {
+		assertTrue(Util.sortGetIndex(new ArrayList<Double>(), true).isEmpty());
+
+		ArrayList<Long> longs = new ArrayList<Long>(Arrays.asList(0l, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE));
+		assertEquals(Arrays.asList(1, 3, 0, 2), Util.sortGetIndex(longs, true));
+		assertEquals(Arrays.asList(2, 0, 1, 3), Util.sortGetIndex(longs, false));
+
+		ArrayList<Double> doubles = new ArrayList<Double>(Arrays.asList(1d, Double.NaN, Double.NEGATIVE_INFINITY, 1d));
+		assertEquals(Arrays.asList(2, 0, 3, 1), Util.sortGetIndex(doubles, true));
+		assertEquals(Arrays.asList(0, 3, 2, 1), Util.sortGetIndex(doubles, false));
+	}
+
+	@Test
+	public void sortGetRankIsInverseOfIndex() {
+		Random random = new Random(7);
+		double[] keys = new double[300];
+		for (int i=0; i<keys.length; i++)
+			keys[i] = random.nextInt(30);
+		int[] index = Util.sortGetIndex(keys);
+		int[] rank = Util.sortGetRank(keys);
+		for (int p=0; p<index.length; p++) {
+			assertEquals(p, rank[index[p]]);
+			if (p > 0) {
+				assertTrue(keys[index[p - 1]] <= keys[index[p]]);
+				if (keys[index[p - 1]] == keys[index[p]])
+					assertTrue(index[p - 1] < index[p]);
+			}
+		}
+	}
+}
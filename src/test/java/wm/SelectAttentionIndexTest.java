@@ -0,0 +1,97 @@
+package wm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SelectAttentionIndexTest {
+	/**
+	 * The selection as WorkingMemory did it with boxed lists: score is the sum of the candidate's position (indexOf) in the stable
+	 * sorted polyVal distance and timeRan order, candidates are walked by stable sorted score, the first one set the timeRan,
+	 * any later one sharing it with a strictly lower depth takes over.
+	 */
+	private static int reference(final double[] polyValDistance, final long[] timeRans, final int[] depths) {
+		int n = polyValDistance.length;
+		List<Integer> distanceOrder = identity(n);
+		Collections.sort(distanceOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(polyValDistance[a], polyValDistance[b]);
+			}
+		});
+		List<Integer> timeRanOrder = identity(n);
+		Collections.sort(timeRanOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(timeRans[a], timeRans[b]);
+			}
+		});
+		final int[] score = new int[n];
+		for (int i=0; i<n; i++)
+			score[i] = distanceOrder.indexOf(i) + timeRanOrder.indexOf(i);
+		List<Integer> scoreOrder = identity(n);
+		Collections.sort(scoreOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(score[a], score[b]);
+			}
+		});
+
+		long bestTimeRan = timeRans[scoreOrder.get(0)];
+		int selected = scoreOrder.get(0);
+		for (int i=1; i<n; i++) {
+			int candidate = scoreOrder.get(i);
+			if (timeRans[candidate] == bestTimeRan && depths[candidate] < depths[selected])
+				selected = candidate;
+		}
+		return selected;
+	}
+
+	private static List<Integer> identity(int n) {
+		List<Integer> result = new ArrayList<Integer>(n);
+		for (int i=0; i<n; i++)
+			result.add(i);
+		return result;
+	}
+
+	@Test
+	public void matchesReferenceOnTieHeavyInput() {
+		Random random = new Random(1);
+		for (int t=0; t<20000; t++) {
+			int n = 1 + random.nextInt(60);
+			double[] polyValDistance = new double[n];
+			long[] timeRans = new long[n];
+			int[] depths = new int[n];
+			//Small value ranges so ties in every key are common, -1 is the timeRan sentinel.
+			for (int i=0; i<n; i++) {
+				polyValDistance[i] = random.nextInt(10);
+				timeRans[i] = random.nextInt(5) - 1;
+				depths[i] = random.nextInt(4);
+			}
+			assertEquals("Case " + t + " distance: " + Arrays.toString(polyValDistance) + " timeRan: " + Arrays.toString(timeRans)
+					+ " depth: " + Arrays.toString(depths)
+					, reference(polyValDistance, timeRans, depths), WorkingMemory.selectAttentionIndex(polyValDistance, timeRans, depths));
+		}
+	}
+
+	@Test
+	public void lowerDepthWinsAmongSameTimeRan() {
+		//Candidate 0 has the best score, 2 shares its timeRan with lower depth, 1 has lower depth but different timeRan.
+		double[] polyValDistance = {0.1d, 0.5d, 0.9d};
+		long[] timeRans = {3l, 7l, 3l};
+		int[] depths = {5, 1, 2};
+		assertEquals(2, WorkingMemory.selectAttentionIndex(polyValDistance, timeRans, depths));
+	}
+
+	@Test
+	public void singleCandidate() {
+		assertEquals(0, WorkingMemory.selectAttentionIndex(new double[] {4d}, new long[] {-1l}, new int[] {0}));
+	}
+}